@@ -34,6 +34,7 @@ public class AnsibleTower extends Builder {
     private Boolean verbose                 = DescriptorImpl.verbose;
     private Boolean importTowerLogs			= DescriptorImpl.importTowerLogs;
     private Boolean removeColor				= DescriptorImpl.removeColor;
+    private Boolean importFromStdout		= DescriptorImpl.importFromStdout;
 
 	@DataBoundConstructor
 	public AnsibleTower(
@@ -65,6 +66,7 @@ public class AnsibleTower extends Builder {
 	public Boolean getVerbose() { return verbose; }
 	public Boolean getImportTowerLogs() { return importTowerLogs; }
 	public Boolean getRemoveColor() { return removeColor; }
+	public Boolean getImportFromStdout() { return importFromStdout; }
 
 	@DataBoundSetter
 	public void setTowerServer(String towerServer) { this.towerServer = towerServer; }
@@ -86,6 +88,8 @@ public class AnsibleTower extends Builder {
 	public void setImportTowerLogs(Boolean importTowerLogs) { this.importTowerLogs = importTowerLogs; }
 	@DataBoundSetter
 	public void setRemoveColor(Boolean removeColor) { this.removeColor = removeColor; }
+	@DataBoundSetter
+	public void setImportFromStdout(Boolean importFromStdout) { this.importFromStdout = importFromStdout; }
 
     @Override
     public boolean perform(AbstractBuild<?,?> build, Launcher launcher, BuildListener listener)
@@ -95,7 +99,7 @@ public class AnsibleTower extends Builder {
 		boolean runResult = runner.runJobTemplate(
 				listener.getLogger(), this.getTowerServer(), this.getJobTemplate(), this.getExtraVars(),
 				this.getLimit(), this.getJobTags(), this.getInventory(), this.getCredential(), this.verbose,
-				this.importTowerLogs, this.getRemoveColor()
+				this.importTowerLogs, Boolean.TRUE.equals(this.getImportFromStdout()), this.getRemoveColor()
 		);
 		if(runResult) {
 			build.setResult(Result.SUCCESS);
@@ -118,6 +122,7 @@ public class AnsibleTower extends Builder {
 		public static final Boolean verbose       	= false;
 		public static final Boolean importTowerLogs	= false;
 		public static final Boolean removeColor		= false;
+		public static final Boolean importFromStdout	= false;
 
         public DescriptorImpl() {
             load();
@@ -0,0 +1,458 @@
+package jenkins.plugins.ansible_tower;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.util.ListBoxModel;
+import jenkins.plugins.ansible_tower.util.JobStatus;
+import jenkins.plugins.ansible_tower.util.TowerEventWindow;
+import jenkins.plugins.ansible_tower.util.TowerInstallation;
+import jenkins.plugins.ansible_tower.util.TowerJobTracker;
+import jenkins.plugins.ansible_tower.util.TowerLaunchLimiter;
+import jenkins.plugins.ansible_tower.util.TowerPrefixedOutputStream;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class AnsibleTowerFanOutStep extends AbstractStepImpl {
+    private String towerServer      = "";
+    private List<AnsibleTowerLaunch> launches = new ArrayList<AnsibleTowerLaunch>();
+    private Boolean verbose         = false;
+    private Boolean importTowerLogs = false;
+    private Boolean removeColor     = false;
+    private Boolean importFromStdout = false;
+    private Boolean failOnError     = true;
+
+    @DataBoundConstructor
+    public AnsibleTowerFanOutStep(@Nonnull String towerServer, @Nonnull List<AnsibleTowerLaunch> launches) {
+        this.towerServer = towerServer;
+        this.launches = launches;
+    }
+
+    @Nonnull
+    public String getTowerServer() { return towerServer; }
+    @Nonnull
+    public List<AnsibleTowerLaunch> getLaunches() { return launches; }
+    public Boolean getVerbose()         { return verbose; }
+    public Boolean getImportTowerLogs() { return importTowerLogs; }
+    public Boolean getRemoveColor()     { return removeColor; }
+    public Boolean getImportFromStdout() { return importFromStdout; }
+    public Boolean getFailOnError()     { return failOnError; }
+
+    @DataBoundSetter
+    public void setVerbose(Boolean verbose) { this.verbose = verbose; }
+    @DataBoundSetter
+    public void setImportTowerLogs(Boolean importTowerLogs) { this.importTowerLogs = importTowerLogs; }
+    @DataBoundSetter
+    public void setRemoveColor(Boolean removeColor) { this.removeColor = removeColor; }
+    @DataBoundSetter
+    public void setImportFromStdout(Boolean importFromStdout) { this.importFromStdout = importFromStdout; }
+    @DataBoundSetter
+    public void setFailOnError(Boolean failOnError) { this.failOnError = failOnError; }
+
+    @Extension
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+        public static final String towerServer      = AnsibleTower.DescriptorImpl.towerServer;
+        public static final Boolean verbose         = AnsibleTower.DescriptorImpl.verbose;
+        public static final Boolean importTowerLogs = AnsibleTower.DescriptorImpl.importTowerLogs;
+        public static final Boolean removeColor     = AnsibleTower.DescriptorImpl.removeColor;
+        public static final Boolean importFromStdout = AnsibleTower.DescriptorImpl.importFromStdout;
+        public static final Boolean failOnError     = true;
+
+        public DescriptorImpl() {
+            super(AnsibleTowerFanOutStepExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "ansibleTowerFanOut";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Have Ansible Tower run several job templates at once";
+        }
+
+        public ListBoxModel doFillTowerServerItems() {
+            ListBoxModel items = new ListBoxModel();
+            items.add(" - None -");
+            for (TowerInstallation towerServer : AnsibleTowerGlobalConfig.get().getTowerInstallation()) {
+                items.add(towerServer.getTowerDisplayName());
+            }
+            return items;
+        }
+    }
+
+
+    // Every launch goes through the installation's launch limiter, a launch only starts once it has a permit
+    // and gives it back when its job finishes. Like the single job step nothing here holds a thread while Tower
+    // works, each job's status comes back from the installation's poller and is handled on the installation's executor.
+    // Per launch state is saved with the pipeline so running jobs are picked back up after a restart.
+    public static final class AnsibleTowerFanOutStepExecution extends AbstractStepExecutionImpl {
+        private static final long serialVersionUID = 1L;
+        private static final String NOT_LAUNCHED = "not launched";
+        private static final String UNKNOWN = "unknown";
+
+        @Inject
+        private transient AnsibleTowerFanOutStep step;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        private transient AnsibleTowerRunner runner;
+        private transient TowerLaunchLimiter limiter;
+        private transient ExecutorService executor;
+        private transient boolean stopped;
+        private String towerServer = null;
+        private boolean verbose = false;
+        private boolean importTowerLogs = false;
+        private boolean importFromStdout = false;
+        private boolean removeColor = false;
+        private boolean failOnError = true;
+        private boolean completed = false;
+        private final List<LaunchState> launches = new ArrayList<LaunchState>();
+
+        @Override
+        public boolean start() throws Exception {
+            runner = new AnsibleTowerRunner();
+            towerServer = step.getTowerServer();
+            if(step.getVerbose() != null) { verbose = step.getVerbose(); }
+            if(step.getImportTowerLogs() != null) { importTowerLogs = step.getImportTowerLogs(); }
+            if(step.getRemoveColor() != null) { removeColor = step.getRemoveColor(); }
+            if(step.getImportFromStdout() != null) { importFromStdout = step.getImportFromStdout(); }
+            if(step.getFailOnError() != null) { failOnError = step.getFailOnError(); }
+
+            if(step.getLaunches() == null || step.getLaunches().isEmpty()) {
+                throw new AbortException("No job templates were given to launch");
+            }
+            // Names key the result map and prefix the log so they have to be unique
+            Set<String> names = new HashSet<String>();
+            for(AnsibleTowerLaunch launch : step.getLaunches()) {
+                String name = launch.getName() == null || launch.getName().isEmpty() ? launch.getJobTemplate() : launch.getName();
+                String uniqueName = name;
+                for(int i = 2; !names.add(uniqueName); i++) { uniqueName = name +"#"+ i; }
+                launches.add(new LaunchState(uniqueName, launch));
+            }
+
+            TowerInstallation installation = runner.getInstallation(listener.getLogger(), towerServer);
+            if(installation == null) { throw new AbortException("Ansible Tower build step failed"); }
+            limiter = installation.getLaunchLimiter();
+            executor = installation.getExecutor();
+            if(verbose) {
+                listener.getLogger().println("Launching "+ launches.size() +" job templates on "+ towerServer +", at most "+
+                        limiter.getMaxConcurrentJobs() +" run at once");
+            }
+
+            for(LaunchState state : launches) { queueLaunch(state); }
+            return false;
+        }
+
+        private void queueLaunch(final LaunchState state) {
+            CompletableFuture<Void> permit = limiter.acquire();
+            synchronized (this) {
+                state.task = permit;
+            }
+            permit.whenCompleteAsync((granted, error) -> guarded(() -> {
+                if(error == null) {
+                    launch(state);
+                } else {
+                    notLaunched(state, error);
+                }
+            }), executor);
+        }
+
+        // Cancelled by stop() or failed because the installation was removed while the job waited for its turn
+        private void notLaunched(LaunchState state, Throwable error) {
+            synchronized (this) {
+                if(stopped) { return; }
+            }
+            if(error instanceof CompletionException && error.getCause() != null) { error = error.getCause(); }
+            state.getLogger(listener).println("ERROR: Job template was not launched: "+ error.getMessage());
+            finish(state, NOT_LAUNCHED, true);
+        }
+
+        private void launch(LaunchState state) {
+            synchronized (this) {
+                state.holdsPermit = true;
+                if(stopped) {
+                    releasePermit(state);
+                    return;
+                }
+                state.launchStarted = true;
+            }
+
+            TowerJobTracker tracker = runner.launchJob(
+                    state.getLogger(listener), towerServer, state.jobTemplate, state.extraVars, state.limit,
+                    state.jobTags, state.inventory, state.credential, verbose, importTowerLogs, importFromStdout, removeColor
+            );
+            if(tracker == null) {
+                finish(state, NOT_LAUNCHED, true);
+                return;
+            }
+            synchronized (this) {
+                if(stopped) {
+                    tracker.close();
+                    return;
+                }
+                state.tracker = tracker;
+                state.jobID = tracker.getJobID();
+            }
+            requestStatus(state, 0);
+        }
+
+        private void resume(LaunchState state) {
+            TowerJobTracker tracker = runner.resumeJob(
+                    state.getLogger(listener), towerServer, state.jobID, state.seenEvents, state.stdoutLine, verbose,
+                    importTowerLogs, importFromStdout, removeColor
+            );
+            if(tracker == null) {
+                finish(state, UNKNOWN, true);
+                return;
+            }
+            synchronized (this) {
+                if(stopped) {
+                    tracker.close();
+                    return;
+                }
+                state.tracker = tracker;
+            }
+            requestStatus(state, 0);
+        }
+
+        private synchronized void requestStatus(final LaunchState state, long delay) {
+            if(stopped) { return; }
+            CompletableFuture<JobStatus> nextStatus = state.tracker.nextStatus(delay);
+            state.task = nextStatus;
+            // Handle the status on the installation's executor, not on the poller's thread, since importing logs talks to Tower
+            nextStatus.whenCompleteAsync((jobStatus, error) -> guarded(() -> handleStatus(state, jobStatus, error)), executor);
+        }
+
+        private void handleStatus(LaunchState state, JobStatus jobStatus, Throwable error) {
+            synchronized (this) {
+                if(stopped) { return; }
+            }
+            PrintStream logger = state.getLogger(listener);
+            long delay = -1;
+            if(error == null) {
+                try {
+                    delay = state.tracker.handleStatus(jobStatus, logger);
+                } catch(AnsibleTowerException e) {
+                    error = e;
+                }
+            }
+            if(error != null) {
+                if(error instanceof CompletionException && error.getCause() != null) { error = error.getCause(); }
+                long retryDelay = state.tracker.handleError(error, logger);
+                if(retryDelay >= 0) {
+                    requestStatus(state, retryDelay);
+                    return;
+                }
+                logger.println("ERROR: Giving up on the Tower job: "+ error.getMessage());
+                finish(state, UNKNOWN, true);
+                return;
+            }
+
+            if(delay >= 0) {
+                requestStatus(state, delay);
+                return;
+            }
+            JobStatus finalStatus = state.tracker.getJobStatus();
+            runner.reportResult(logger, finalStatus, verbose);
+            finish(state, finalStatus.getStatus(), finalStatus.isFailed());
+        }
+
+        private void finish(LaunchState state, String status, boolean failed) {
+            synchronized (this) {
+                if(state.tracker != null) { state.tracker.close(); }
+                state.status = status;
+                state.failed = failed;
+                state.finished = true;
+                releasePermit(state);
+            }
+            state.closeLogger();
+            checkCompleted();
+        }
+
+        private void checkCompleted() {
+            synchronized (this) {
+                if(stopped || completed) { return; }
+                for(LaunchState state : launches) {
+                    if(!state.finished) { return; }
+                }
+                completed = true;
+            }
+
+            PrintStream logger = listener.getLogger();
+            Map<String, Object> results = new LinkedHashMap<String, Object>();
+            int failures = 0;
+            for(LaunchState state : launches) {
+                Map<String, Object> result = new LinkedHashMap<String, Object>();
+                result.put("id", state.jobID);
+                result.put("status", state.status);
+                result.put("failed", state.failed);
+                results.put(state.name, result);
+                logger.println(state.name +": "+ state.status + (state.jobID == -1 ? "" : " (job "+ state.jobID +")"));
+                if(state.failed) { failures++; }
+            }
+
+            if(failOnError && failures > 0) {
+                getContext().onFailure(new AbortException(failures +" of "+ launches.size() +" Tower jobs failed"));
+            } else {
+                getContext().onSuccess(results);
+            }
+        }
+
+        // Must be called holding our lock, the permit is given back at most once whichever path gets here first
+        private void releasePermit(LaunchState state) {
+            if(!state.holdsPermit) { return; }
+            state.holdsPermit = false;
+            limiter.release();
+        }
+
+        private void guarded(Runnable work) {
+            try {
+                work.run();
+            } catch(RuntimeException e) {
+                // Nobody is waiting on the timer so an escaped exception would leave the step hanging forever
+                getContext().onFailure(e);
+            }
+        }
+
+        @Override
+        public void stop(@Nonnull Throwable cause) throws Exception {
+            synchronized (this) {
+                stopped = true;
+                for(LaunchState state : launches) {
+                    if(state.task != null) { state.task.cancel(false); }
+                    if(state.tracker != null) { state.tracker.close(); }
+                    releasePermit(state);
+                }
+            }
+            for(LaunchState state : launches) { state.closeLogger(); }
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            try {
+                listener = getContext().get(TaskListener.class);
+            } catch(IOException | InterruptedException e) {
+                getContext().onFailure(e);
+                return;
+            }
+            runner = new AnsibleTowerRunner();
+            TowerInstallation installation = runner.getInstallation(listener.getLogger(), towerServer);
+            if(installation == null) {
+                getContext().onFailure(new AbortException("Ansible Tower build step failed"));
+                return;
+            }
+            limiter = installation.getLaunchLimiter();
+            executor = installation.getExecutor();
+
+            executor.submit(() -> guarded(() -> {
+                for(LaunchState state : launches) {
+                    if(state.finished) { continue; }
+                    if(state.jobID != -1) {
+                        // Already running on Tower, it counts against the cap even if that puts us over it
+                        synchronized (this) {
+                            limiter.forceAcquire();
+                            state.holdsPermit = true;
+                        }
+                        resume(state);
+                    } else if(state.launchStarted) {
+                        // The launch was in flight, we can't tell which job would be ours
+                        state.getLogger(listener).println("ERROR: Jenkins restarted before the Tower job was launched, its result is unknown");
+                        finish(state, UNKNOWN, true);
+                    } else {
+                        queueLaunch(state);
+                    }
+                }
+                // Everything may have finished before the restart without the step being completed
+                checkCompleted();
+            }));
+        }
+
+        // The pipeline is saved from another thread, the trackers hand us each cursor as of the last output they
+        // wrote without waiting for an import that is in progress
+        private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+            for(LaunchState state : launches) {
+                if(state.tracker != null) {
+                    state.seenEvents = state.tracker.getSeenEvents();
+                    state.stdoutLine = state.tracker.getStdoutLine();
+                }
+            }
+            out.defaultWriteObject();
+        }
+    }
+
+    private static final class LaunchState implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String jobTemplate;
+        private final String extraVars;
+        private final String limit;
+        private final String jobTags;
+        private final String inventory;
+        private final String credential;
+        private boolean launchStarted = false;
+        private int jobID = -1;
+        private TowerEventWindow seenEvents = new TowerEventWindow();
+        private int stdoutLine = 0;
+        private boolean finished = false;
+        private String status = null;
+        private boolean failed = false;
+
+        private transient TowerJobTracker tracker;
+        private transient Future<?> task;
+        private transient boolean holdsPermit;
+        private transient PrintStream logger;
+
+        private LaunchState(String name, AnsibleTowerLaunch launch) {
+            this.name = name;
+            // Doing this will make the options optional in the pipeline step.
+            this.jobTemplate = launch.getJobTemplate();
+            this.extraVars = launch.getExtraVars() == null ? "" : launch.getExtraVars();
+            this.limit = launch.getLimit() == null ? "" : launch.getLimit();
+            this.jobTags = launch.getJobTags() == null ? "" : launch.getJobTags();
+            this.inventory = launch.getInventory() == null ? "" : launch.getInventory();
+            this.credential = launch.getCredential() == null ? "" : launch.getCredential();
+        }
+
+        // Each launch prints whole lines into the shared build log prefixed with its name
+        private synchronized PrintStream getLogger(TaskListener listener) {
+            if(logger == null) {
+                logger = new PrintStream(new TowerPrefixedOutputStream(listener.getLogger(), "["+ name +"] "), true);
+            }
+            return logger;
+        }
+
+        private synchronized void closeLogger() {
+            if(logger != null) {
+                logger.close();
+                logger = null;
+            }
+        }
+    }
+}
@@ -10,7 +10,12 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import jenkins.plugins.ansible_tower.util.TowerInstallation;
 
@@ -18,6 +23,8 @@ import jenkins.plugins.ansible_tower.util.TowerInstallation;
 public class AnsibleTowerGlobalConfig extends GlobalConfiguration {
 
     private List<TowerInstallation> towerInstallations = new ArrayList<TowerInstallation>();
+    // What builds read, replaced as a whole whenever the installations change so readers never need a lock
+    private transient volatile Snapshot snapshot = new Snapshot(Collections.<TowerInstallation>emptyList());
 
     private static final XStream2 XSTREAM2 = new XStream2();
 
@@ -25,6 +32,12 @@ public class AnsibleTowerGlobalConfig extends GlobalConfiguration {
         load();
     }
 
+    @Override
+    public synchronized void load() {
+        super.load();
+        snapshot = new Snapshot(towerInstallations);
+    }
+
     @Override
     protected XmlFile getConfigFile() {
         Jenkins j = Jenkins.getInstance();
@@ -48,18 +61,54 @@ public class AnsibleTowerGlobalConfig extends GlobalConfiguration {
     }
 
     public List<TowerInstallation> getTowerInstallation() {
-        return towerInstallations;
+        return snapshot.installations;
     }
 
     public TowerInstallation getTowerInstallationByName(String name) {
-        for(TowerInstallation installation : towerInstallations) {
-            if(installation.getTowerDisplayName().equals(name)) { return installation; }
+        if(name == null) { return null; }
+        return snapshot.byName.get(name);
+    }
+
+    public synchronized void setTowerInstallation(List<TowerInstallation> towerInstallations) {
+        List<TowerInstallation> installations = towerInstallations == null ?
+                new ArrayList<TowerInstallation>() : new ArrayList<TowerInstallation>(towerInstallations);
+        // Carry pools, pollers and the like over before anyone can see the new installations
+        Snapshot previous = snapshot;
+        Set<TowerInstallation> carriedOver = Collections.newSetFromMap(new IdentityHashMap<TowerInstallation, Boolean>());
+        carriedOver.addAll(installations);
+        for(TowerInstallation installation : installations) {
+            TowerInstallation match = previous.byName.get(installation.getTowerDisplayName());
+            if(match != null && match != installation && match.getTowerURL().equals(installation.getTowerURL())) {
+                installation.adoptSharedState(match);
+                carriedOver.add(match);
+            }
+        }
+        this.towerInstallations = installations;
+        snapshot = new Snapshot(installations);
+        // Removed, renamed or pointed at another Tower, nobody took over their pools, pollers and threads
+        for(TowerInstallation installation : previous.installations) {
+            if(!carriedOver.contains(installation)) { installation.shutdown(); }
         }
-        return null;
     }
 
-    public void setTowerInstallation(List<TowerInstallation> towerInstallations) {
-        this.towerInstallations = towerInstallations;
+    // An immutable view of the installations with an index by display name
+    private static final class Snapshot {
+        private final List<TowerInstallation> installations;
+        private final Map<String, TowerInstallation> byName;
+
+        private Snapshot(List<TowerInstallation> installations) {
+            List<TowerInstallation> copy = installations == null ?
+                    new ArrayList<TowerInstallation>() : new ArrayList<TowerInstallation>(installations);
+            Map<String, TowerInstallation> index = new HashMap<String, TowerInstallation>();
+            for(TowerInstallation installation : copy) {
+                // With duplicate names the first one wins, as it always has
+                if(!index.containsKey(installation.getTowerDisplayName())) {
+                    index.put(installation.getTowerDisplayName(), installation);
+                }
+            }
+            this.installations = Collections.unmodifiableList(copy);
+            this.byName = Collections.unmodifiableMap(index);
+        }
     }
 
 }
@@ -0,0 +1,7 @@
+package jenkins.plugins.ansible_tower;
+
+public class AnsibleTowerItemDoesNotExist extends AnsibleTowerException {
+    public AnsibleTowerItemDoesNotExist(String message) {
+        super(message);
+    }
+}
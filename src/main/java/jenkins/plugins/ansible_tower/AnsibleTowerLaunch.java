@@ -0,0 +1,55 @@
+package jenkins.plugins.ansible_tower;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+
+// One job template launch within an ansibleTowerFanOut step
+public class AnsibleTowerLaunch extends AbstractDescribableImpl<AnsibleTowerLaunch> {
+    private String name             = "";
+    private String jobTemplate      = "";
+    private String extraVars        = "";
+    private String limit            = "";
+    private String jobTags          = "";
+    private String inventory        = "";
+    private String credential       = "";
+
+    @DataBoundConstructor
+    public AnsibleTowerLaunch(@Nonnull String jobTemplate) {
+        this.jobTemplate = jobTemplate;
+    }
+
+    public String getName()             { return name; }
+    @Nonnull
+    public String getJobTemplate()      { return jobTemplate; }
+    public String getExtraVars()        { return extraVars; }
+    public String getJobTags()          { return jobTags; }
+    public String getLimit()            { return limit; }
+    public String getInventory()        { return inventory; }
+    public String getCredential()       { return credential; }
+
+    @DataBoundSetter
+    public void setName(String name) { this.name = name; }
+    @DataBoundSetter
+    public void setExtraVars(String extraVars) { this.extraVars = extraVars; }
+    @DataBoundSetter
+    public void setJobTags(String jobTags) { this.jobTags = jobTags; }
+    @DataBoundSetter
+    public void setLimit(String limit) { this.limit = limit; }
+    @DataBoundSetter
+    public void setInventory(String inventory) { this.inventory = inventory; }
+    @DataBoundSetter
+    public void setCredential(String credential) { this.credential = credential; }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<AnsibleTowerLaunch> {
+        @Override
+        public String getDisplayName() {
+            return "Tower job template launch";
+        }
+    }
+}
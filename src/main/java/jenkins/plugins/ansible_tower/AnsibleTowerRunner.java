@@ -2,27 +2,77 @@ package jenkins.plugins.ansible_tower;
 
 import hudson.model.AbstractBuild;
 import hudson.model.Result;
+import jenkins.plugins.ansible_tower.util.JobStatus;
 import jenkins.plugins.ansible_tower.util.TowerConnector;
+import jenkins.plugins.ansible_tower.util.TowerEventWindow;
 import jenkins.plugins.ansible_tower.util.TowerInstallation;
+import jenkins.plugins.ansible_tower.util.TowerJobTracker;
 
 import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class AnsibleTowerRunner {
     public boolean runJobTemplate(
             PrintStream logger, String towerServer, String jobTemplate, String extraVars, String limit,
             String jobTags, String inventory, String credential, boolean verbose, boolean importTowerLogs,
-            boolean removeColor
+            boolean importFromStdout, boolean removeColor
+    ) {
+        TowerJobTracker tracker = launchJob(
+                logger, towerServer, jobTemplate, extraVars, limit, jobTags, inventory, credential, verbose,
+                importTowerLogs, importFromStdout, removeColor
+        );
+        if(tracker == null) { return false; }
+
+        long delay = 0;
+        try {
+            while(delay >= 0) {
+                Future<JobStatus> nextStatus = tracker.nextStatus(delay);
+                try {
+                    JobStatus jobStatus;
+                    try {
+                        jobStatus = nextStatus.get();
+                    } catch(ExecutionException e) {
+                        throw e.getCause() instanceof AnsibleTowerException ? (AnsibleTowerException) e.getCause() : new AnsibleTowerException(e.getCause().getMessage());
+                    }
+                    delay = tracker.handleStatus(jobStatus, logger);
+                } catch(AnsibleTowerException e) {
+                    delay = tracker.handleError(e, logger);
+                    if(delay < 0) {
+                        logger.println("ERROR: Giving up on the Tower job: "+ e.getMessage());
+                        return false;
+                    }
+                } catch(InterruptedException ie) {
+                    nextStatus.cancel(false);
+                    logger.println("ERROR: Got interrupted while waiting for the job status");
+                    return false;
+                }
+            }
+        } finally {
+            tracker.close();
+        }
+
+        return reportResult(logger, tracker.getJobStatus(), verbose);
+    }
+
+    // Launches the job template and hands back a tracker for it, or null (after logging why) if we could not
+    public TowerJobTracker launchJob(
+            PrintStream logger, String towerServer, String jobTemplate, String extraVars, String limit,
+            String jobTags, String inventory, String credential, boolean verbose, boolean importTowerLogs,
+            boolean importFromStdout, boolean removeColor
     ) {
         if(verbose) { logger.println("Beginning Ansible Tower Run on "+ towerServer); }
 
-        AnsibleTowerGlobalConfig myConfig = new AnsibleTowerGlobalConfig();
-        TowerInstallation towerConfigToRunOn = myConfig.getTowerInstallationByName(towerServer);
-        if(towerConfigToRunOn == null) {
-            logger.println("ERROR: Ansible tower server "+ towerServer +" does not exist in Ansible Tower configuration");
-            return false;
+        TowerInstallation towerConfigToRunOn = getInstallation(logger, towerServer);
+        if(towerConfigToRunOn == null) { return null; }
+
+        if(towerConfigToRunOn.getTowerFailWhenDown() && towerConfigToRunOn.getHealth().isDown()) {
+            logger.println("ERROR: Ansible tower server "+ towerServer +" is failing its health checks: "+ towerConfigToRunOn.getHealth().getLastError());
+            return null;
         }
 
-        TowerConnector myTowerConnection = towerConfigToRunOn.getTowerConnector();
+        TowerConnector myTowerConnection = getConnector(logger, towerConfigToRunOn);
+        if(myTowerConnection == null) { return null; }
 
         if(verbose) { logger.println("Requesting tower to run job template "+ jobTemplate); }
         int myJobID;
@@ -30,47 +80,82 @@ public class AnsibleTowerRunner {
             myJobID = myTowerConnection.submitJob(jobTemplate, extraVars, limit, jobTags, inventory, credential);
         } catch(AnsibleTowerException e) {
             logger.println("ERROR: Unable to request job template invocation "+ e.getMessage());
-            return false;
+            return null;
+        } finally {
+            // Under load the installation's request limits hold launches back, let the build say so
+            long queuedMillis = myTowerConnection.takeQueuedMillis();
+            if(queuedMillis > 0) { logger.println("Waited "+ queuedMillis +" ms for Tower request capacity"); }
         }
 
         logger.println("Job URL: "+ towerConfigToRunOn.getTowerURL() +"/#/jobs/"+ myJobID);
 
-        boolean jobCompleted = false;
-        while(!jobCompleted) {
-            // First log any events if the user wants them
-            try {
-                if (importTowerLogs) { myTowerConnection.logJobEvents(myJobID, logger, removeColor); }
-            } catch(AnsibleTowerException e) {
-                logger.println("ERROR: Faile to get job events from tower: "+ e.getMessage());
-                return false;
-            }
+        return startTracking(
+                logger, towerConfigToRunOn, myTowerConnection, myJobID, verbose, importTowerLogs, importFromStdout, removeColor
+        );
+    }
+
+    // Picks up a job we launched before Jenkins restarted, output is imported from where the build log left off
+    public TowerJobTracker resumeJob(
+            PrintStream logger, String towerServer, int jobID, TowerEventWindow seenEvents, int stdoutLine, boolean verbose,
+            boolean importTowerLogs, boolean importFromStdout, boolean removeColor
+    ) {
+        TowerInstallation towerConfigToRunOn = getInstallation(logger, towerServer);
+        if(towerConfigToRunOn == null) { return null; }
+
+        TowerConnector myTowerConnection = getConnector(logger, towerConfigToRunOn);
+        if(myTowerConnection == null) { return null; }
+        myTowerConnection.setLogCursor(seenEvents, stdoutLine);
+
+        logger.println("Resuming tracking of Tower job "+ jobID +": "+ towerConfigToRunOn.getTowerURL() +"/#/jobs/"+ jobID);
+
+        return startTracking(
+                logger, towerConfigToRunOn, myTowerConnection, jobID, verbose, importTowerLogs, importFromStdout, removeColor
+        );
+    }
+
+    TowerInstallation getInstallation(PrintStream logger, String towerServer) {
+        // The shared config, a fresh one would reload the XML and hand us installations with no pools or pollers
+        TowerInstallation towerConfigToRunOn = AnsibleTowerGlobalConfig.get().getTowerInstallationByName(towerServer);
+        if(towerConfigToRunOn == null) {
+            logger.println("ERROR: Ansible tower server "+ towerServer +" does not exist in Ansible Tower configuration");
+        }
+        return towerConfigToRunOn;
+    }
+
+    private TowerConnector getConnector(PrintStream logger, TowerInstallation towerConfigToRunOn) {
+        try {
+            return towerConfigToRunOn.getTowerConnector();
+        } catch(AnsibleTowerException e) {
+            logger.println("ERROR: Unable to connect to Tower: "+ e.getMessage());
+            return null;
+        }
+    }
+
+    private TowerJobTracker startTracking(
+            PrintStream logger, TowerInstallation towerConfigToRunOn, TowerConnector myTowerConnection, int jobID,
+            boolean verbose, boolean importTowerLogs, boolean importFromStdout, boolean removeColor
+    ) {
+        TowerJobTracker tracker = new TowerJobTracker(
+                myTowerConnection, towerConfigToRunOn.getJobPoller(), jobID, towerConfigToRunOn.getPollingPolicy(),
+                importTowerLogs, importFromStdout, removeColor
+        );
+        if(towerConfigToRunOn.getTowerPushEvents()) {
             try {
-                jobCompleted = myTowerConnection.isJobCommpleted(myJobID);
+                tracker.startEventStream(logger);
             } catch(AnsibleTowerException e) {
-                logger.println("ERROR: Failed to get job status from Tower: "+ e.getMessage());
-                return false;
-            }
-            if(!jobCompleted) {
-                try {
-                    Thread.sleep(3000);
-                } catch(InterruptedException ie) {
-                    logger.println("ERROR: Got interrupted while sleeping");
-                    return false;
-                }
+                if(verbose) { logger.println("Unable to stream job events from Tower, polling instead: "+ e.getMessage()); }
             }
         }
+        return tracker;
+    }
 
-        try {
-            if(myTowerConnection.isJobFailed(myJobID)) {
-                logger.println("Tower failed to complete the requeted job");
-                return false;
-            } else {
-                if(verbose) { logger.println("Tower completed the requested job"); }
-                return true;
-            }
-        } catch(AnsibleTowerException e) {
-            logger.println("ERROR: Failed to job failure status from Tower: "+ e.getMessage());
+    public boolean reportResult(PrintStream logger, JobStatus jobStatus, boolean verbose) {
+        if(jobStatus.isFailed()) {
+            logger.println("Tower failed to complete the requeted job");
             return false;
+        } else {
+            if(verbose) { logger.println("Tower completed the requested job"); }
+            return true;
         }
     }
 }
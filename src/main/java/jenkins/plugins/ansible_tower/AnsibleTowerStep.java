@@ -2,21 +2,29 @@ package jenkins.plugins.ansible_tower;
 
 import com.google.inject.Inject;
 import hudson.Launcher;
-import hudson.model.Computer;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.*;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
+import jenkins.plugins.ansible_tower.util.JobStatus;
+import jenkins.plugins.ansible_tower.util.TowerEventWindow;
 import jenkins.plugins.ansible_tower.util.TowerInstallation;
+import jenkins.plugins.ansible_tower.util.TowerJobTracker;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class AnsibleTowerStep extends AbstractStepImpl {
     private String towerServer      = "";
@@ -29,6 +37,7 @@ public class AnsibleTowerStep extends AbstractStepImpl {
     private Boolean verbose         = false;
     private Boolean importTowerLogs = false;
     private Boolean removeColor = false;
+    private Boolean importFromStdout = false;
 
     @DataBoundConstructor
     public AnsibleTowerStep(
@@ -60,6 +69,7 @@ public class AnsibleTowerStep extends AbstractStepImpl {
     public Boolean getVerbose()         { return verbose; }
     public Boolean getImportTowerLogs() { return importTowerLogs; }
     public Boolean getRemoveColor()     { return removeColor; }
+    public Boolean getImportFromStdout() { return importFromStdout; }
 
     @DataBoundSetter
     public void setTowerServer(String towerServer) { this.towerServer = towerServer; }
@@ -81,6 +91,8 @@ public class AnsibleTowerStep extends AbstractStepImpl {
     public void setImportTowerLogs(Boolean importTowerLogs) { this.importTowerLogs = importTowerLogs; }
     @DataBoundSetter
     public void setRemoveColor(Boolean removeColor) { this.removeColor = removeColor; }
+    @DataBoundSetter
+    public void setImportFromStdout(Boolean importFromStdout) { this.importFromStdout = importFromStdout; }
 
     public boolean isGlobalColorAllowed() {
         System.out.println("Using the class is global color allowed");
@@ -99,6 +111,7 @@ public class AnsibleTowerStep extends AbstractStepImpl {
         public static final Boolean verbose         = AnsibleTower.DescriptorImpl.verbose;
         public static final Boolean importTowerLogs = AnsibleTower.DescriptorImpl.importTowerLogs;
         public static final Boolean removeColor     = AnsibleTower.DescriptorImpl.removeColor;
+        public static final Boolean importFromStdout = AnsibleTower.DescriptorImpl.importFromStdout;
 
         public DescriptorImpl() {
             super(AnsibleTowerStepExecution.class);
@@ -130,7 +143,12 @@ public class AnsibleTowerStep extends AbstractStepImpl {
     }
 
 
-    public static final class AnsibleTowerStepExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    // Nothing here holds a thread or an executor while Tower works on the job.
+    // The launch runs as a short task on the installation's executor, after that the installation's job poller
+    // calls us back with each status and the step is completed from there.
+    // The job id and how much of its output we have printed are saved with the pipeline so after a restart
+    // we pick the job back up instead of failing the build.
+    public static final class AnsibleTowerStepExecution extends AbstractStepExecutionImpl {
         private static final long serialVersionUID = 1L;
 
         @Inject
@@ -139,30 +157,44 @@ public class AnsibleTowerStep extends AbstractStepImpl {
         @StepContextParameter
         private transient TaskListener listener;
 
-        @StepContextParameter
-        private transient Launcher launcher;
-
-        @StepContextParameter
-        private transient Run<?,?> run;
-
-        @StepContextParameter
-        private transient FilePath ws;
-
-        @StepContextParameter
-        private transient EnvVars envVars;
-
-        @StepContextParameter
-        private transient Computer computer;
-
-
+        private transient AnsibleTowerRunner runner;
+        private transient TowerJobTracker tracker;
+        private transient Future<?> task;
+        private transient ExecutorService executor;
+        private transient boolean stopped;
+        private boolean verbose = false;
+        private String towerServer = null;
+        private int jobID = -1;
+        private boolean importTowerLogs = false;
+        private boolean importFromStdout = false;
+        private boolean removeColor = false;
+        private TowerEventWindow seenEvents = new TowerEventWindow();
+        private int stdoutLine = 0;
 
         @Override
-        protected Void run() throws Exception {
-            if ((computer == null) || (computer.getNode() == null)) {
-                throw new AbortException("The Ansible Tower build step requires to be launched on a node");
-            }
-            AnsibleTowerRunner runner = new AnsibleTowerRunner();
+        public boolean start() throws Exception {
+            runner = new AnsibleTowerRunner();
+            if(step.getVerbose() != null) { verbose = step.getVerbose(); }
+            TowerInstallation installation = runner.getInstallation(listener.getLogger(), step.getTowerServer());
+            if(installation == null) { throw new AbortException("Ansible Tower build step failed"); }
+            executor = installation.getExecutor();
+            // Launching is a round trip to Tower too so keep it off the CPS thread
+            submit(this::launch);
+            return false;
+        }
 
+        private synchronized void submit(Runnable work) {
+            task = executor.submit(() -> {
+                try {
+                    work.run();
+                } catch(RuntimeException e) {
+                    // Nobody is waiting on the task so an escaped exception would leave the step hanging forever
+                    getContext().onFailure(e);
+                }
+            });
+        }
+
+        private void launch() {
             // Doing this will make the options optional in the pipeline step.
             String extraVars = "";
             if(step.getExtraVars() != null) { extraVars = step.getExtraVars(); }
@@ -174,22 +206,139 @@ public class AnsibleTowerStep extends AbstractStepImpl {
             if(step.getInventory() != null) { inventory = step.getInventory(); }
             String credential = "";
             if(step.getCredential() != null) { credential = step.getCredential(); }
-            boolean verbose = false;
-            if(step.getVerbose() != null) { verbose = step.getVerbose(); }
-            boolean importTowerLogs = false;
             if(step.getImportTowerLogs() != null) { importTowerLogs = step.getImportTowerLogs(); }
-            boolean removeColor = false;
             if(step.getRemoveColor() != null) { removeColor = step.getRemoveColor(); }
+            if(step.getImportFromStdout() != null) { importFromStdout = step.getImportFromStdout(); }
+            towerServer = step.getTowerServer();
+
+            TowerJobTracker launched = runner.launchJob(
+                    listener.getLogger(), towerServer, step.getJobTemplate(), extraVars,
+                    limit, tags, inventory, credential, verbose, importTowerLogs, importFromStdout, removeColor
+            );
+            if(launched == null) {
+                getContext().onFailure(new AbortException("Ansible Tower build step failed"));
+                return;
+            }
+            synchronized (this) {
+                jobID = launched.getJobID();
+                if(stopped) {
+                    // Stopped while the launch was in flight, stop() had no tracker to close yet
+                    launched.close();
+                    return;
+                }
+                tracker = launched;
+            }
+            requestStatus(0);
+        }
 
-            boolean runResult = runner.runJobTemplate(
-                    listener.getLogger(), step.getTowerServer(), step.getJobTemplate(), extraVars,
-                    limit, tags, inventory, credential, verbose, importTowerLogs, removeColor
+        private void resume() {
+            TowerJobTracker resumed = runner.resumeJob(
+                    listener.getLogger(), towerServer, jobID, seenEvents, stdoutLine, verbose,
+                    importTowerLogs, importFromStdout, removeColor
             );
-            if(!runResult) {
-                throw new AbortException("Ansible Tower build step failed");
+            if(resumed == null) {
+                getContext().onFailure(new AbortException("Ansible Tower build step failed"));
+                return;
+            }
+            synchronized (this) {
+                if(stopped) {
+                    resumed.close();
+                    return;
+                }
+                tracker = resumed;
+            }
+            requestStatus(0);
+        }
+
+        private synchronized void requestStatus(long delay) {
+            if(stopped) { return; }
+            CompletableFuture<JobStatus> nextStatus = tracker.nextStatus(delay);
+            task = nextStatus;
+            // Handle the status on the installation's executor, not on the poller's thread, since importing logs talks to Tower
+            nextStatus.whenCompleteAsync((jobStatus, error) -> {
+                try {
+                    handleStatus(jobStatus, error);
+                } catch(RuntimeException e) {
+                    getContext().onFailure(e);
+                }
+            }, executor);
+        }
+
+        private void handleStatus(JobStatus jobStatus, Throwable error) {
+            synchronized (this) {
+                if(stopped) { return; }
+            }
+            long delay = -1;
+            if(error == null) {
+                try {
+                    delay = tracker.handleStatus(jobStatus, listener.getLogger());
+                } catch(AnsibleTowerException e) {
+                    error = e;
+                }
+            }
+            if(error != null) {
+                if(error instanceof CompletionException && error.getCause() != null) { error = error.getCause(); }
+                // Tower having a bad moment shouldn't fail the build, the tracker decides how long we put up with it
+                long retryDelay = tracker.handleError(error, listener.getLogger());
+                if(retryDelay >= 0) {
+                    requestStatus(retryDelay);
+                    return;
+                }
+                listener.getLogger().println("ERROR: Giving up on the Tower job: "+ error.getMessage());
+                tracker.close();
+                getContext().onFailure(new AbortException("Ansible Tower build step failed"));
+                return;
+            }
+
+            if(delay >= 0) {
+                requestStatus(delay);
+            } else if(runner.reportResult(listener.getLogger(), tracker.getJobStatus(), verbose)) {
+                getContext().onSuccess(null);
+            } else {
+                getContext().onFailure(new AbortException("Ansible Tower build step failed"));
             }
-            return null;
+        }
+
+        @Override
+        public synchronized void stop(@Nonnull Throwable cause) throws Exception {
+            stopped = true;
+            if(task != null) { task.cancel(false); }
+            if(tracker != null) { tracker.close(); }
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            if(jobID == -1) {
+                // Either the launch never happened or it was in flight, we can't tell which job would be ours
+                getContext().onFailure(new AbortException("Jenkins restarted before the Tower job was launched, its result is unknown"));
+                return;
+            }
+            try {
+                listener = getContext().get(TaskListener.class);
+            } catch(IOException | InterruptedException e) {
+                getContext().onFailure(e);
+                return;
+            }
+            runner = new AnsibleTowerRunner();
+            TowerInstallation installation = runner.getInstallation(listener.getLogger(), towerServer);
+            if(installation == null) {
+                getContext().onFailure(new AbortException("Ansible Tower build step failed"));
+                return;
+            }
+            executor = installation.getExecutor();
+            submit(this::resume);
+        }
+
+        // The pipeline is saved from another thread, the tracker hands us the cursor as of the last output it
+        // wrote without waiting for an import that is in progress
+        private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+            if(tracker != null) {
+                seenEvents = tracker.getSeenEvents();
+                stdoutLine = tracker.getStdoutLine();
+            }
+            out.defaultWriteObject();
         }
     }
 }
-
@@ -0,0 +1,51 @@
+package jenkins.plugins.ansible_tower;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.ManagementLink;
+import jenkins.plugins.ansible_tower.util.TowerInstallation;
+
+import java.util.List;
+
+// Manage Jenkins page showing what the background health monitor knows about each Tower installation
+@Extension
+public class TowerHealthLink extends ManagementLink {
+    @Override
+    public String getIconFileName() {
+        return "network.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Ansible Tower Health";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Reachability and response times of the configured Ansible Tower installations.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ansible-tower-health";
+    }
+
+    public List<TowerInstallation> getInstallations() {
+        return AnsibleTowerGlobalConfig.get().getTowerInstallation();
+    }
+
+    public String formatLatency(long latency) {
+        return latency < 0 ? "-" : latency +" ms";
+    }
+
+    public String formatBytes(long bytes) {
+        if(bytes < 1024) { return bytes +" B"; }
+        if(bytes < 1024 * 1024) { return String.format("%.1f KB", bytes / 1024.0); }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    public String formatLastChecked(long lastChecked) {
+        if(lastChecked == 0) { return "Not yet"; }
+        return Util.getTimeSpanString(System.currentTimeMillis() - lastChecked) +" ago";
+    }
+}
@@ -0,0 +1,32 @@
+package jenkins.plugins.ansible_tower.util;
+
+/*
+ * A snapshot of a Tower job taken from a single status request.
+ * Callers should hang onto this instead of going back to Tower for each field.
+ */
+public class JobStatus {
+    private final int jobID;
+    private final String status;
+    private final boolean finished;
+    private final boolean failed;
+    private final double elapsed;
+
+    public JobStatus(int jobID, String status, boolean finished, boolean failed, double elapsed) {
+        this.jobID = jobID;
+        this.status = status;
+        this.finished = finished;
+        this.failed = failed;
+        this.elapsed = elapsed;
+    }
+
+    public int getJobID() { return jobID; }
+    public String getStatus() { return status; }
+    public boolean isFinished() { return finished; }
+    public boolean isFailed() { return failed; }
+    public double getElapsed() { return elapsed; }
+
+    @Override
+    public String toString() {
+        return "Job "+ jobID +" is "+ status +" ("+ elapsed +"s elapsed)";
+    }
+}
@@ -0,0 +1,56 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Stops every build from hammering a Tower installation that is down.
+ * After enough failures in a row the breaker opens and requests fail straight away. Once it has been open
+ * for a while a single request is let through as a probe, if that works the breaker closes again and if not
+ * it stays open for another round.
+ */
+public class TowerCircuitBreaker {
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+
+    public synchronized State getState() { return state; }
+
+    // Returns false if the request should not be sent, a true while half open makes the caller the probe
+    public synchronized boolean allowRequest() {
+        if(state == State.CLOSED) { return true; }
+        if(state == State.OPEN && now() - openedAt >= OPEN_DURATION) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        // Open, or half open with the probe still out
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    // The request never reached Tower, if it was the probe let the next request probe instead
+    public synchronized void recordSkipped() {
+        if(state == State.HALF_OPEN) { state = State.OPEN; }
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = now();
+        }
+    }
+
+    // Tests step the clock instead of waiting out the open period
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
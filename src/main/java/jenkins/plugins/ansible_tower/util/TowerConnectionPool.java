@@ -0,0 +1,181 @@
+package jenkins.plugins.ansible_tower.util;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+
+/*
+ * A long lived, keep-alive connection pool to a single Tower installation.
+ * Every build that targets the installation shares the same pool so we only pay for the TCP and TLS handshakes once.
+ */
+public class TowerConnectionPool {
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+    public static final int DEFAULT_IDLE_TIMEOUT = 60;
+    // Timeouts are in seconds, a hung Tower should fail the request rather than hold the caller forever
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10;
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60;
+    public static final int DEFAULT_LEASE_TIMEOUT = 30;
+
+    // Every pool that is still reachable, the reaper walks this to evict idle connections.
+    // Pools drop out of here on their own once no installation or connector references them any more.
+    private static final Set<TowerConnectionPool> pools = Collections.newSetFromMap(new WeakHashMap<TowerConnectionPool, Boolean>());
+
+    private final ThreadSafeClientConnManager connectionManager;
+    private final DefaultHttpClient httpClient;
+    private final SSLSocketFactory sslSocketFactory;
+    private final boolean trustAllCerts;
+    private final int maxConnections;
+    private final int idleTimeout;
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int leaseTimeout;
+    // Set once the installation has moved on to another pool, see retire()
+    private volatile boolean retired = false;
+    private volatile TowerConnectionPool successor = null;
+    private volatile boolean shutdown = false;
+
+    public TowerConnectionPool(
+            boolean trustAllCerts, int maxConnections, int idleTimeout, int connectTimeout, int socketTimeout, int leaseTimeout
+    ) throws AnsibleTowerException {
+        this.trustAllCerts = trustAllCerts;
+        this.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+        this.idleTimeout = idleTimeout > 0 ? idleTimeout : DEFAULT_IDLE_TIMEOUT;
+        this.connectTimeout = connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+        this.socketTimeout = socketTimeout > 0 ? socketTimeout : DEFAULT_SOCKET_TIMEOUT;
+        this.leaseTimeout = leaseTimeout > 0 ? leaseTimeout : DEFAULT_LEASE_TIMEOUT;
+
+        SSLSocketFactory sf;
+        if(trustAllCerts) {
+            try {
+                KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+                trustStore.load(null, null);
+                sf = new TrustingSSLSocketFactory(trustStore);
+            } catch(Exception e) {
+                throw new AnsibleTowerException("Unable to create trusting SSL socket factory");
+            }
+            sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        } else {
+            sf = SSLSocketFactory.getSocketFactory();
+        }
+        sslSocketFactory = sf;
+
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+        // How long to wait for a free connection when every connection in the pool is busy
+        ConnManagerParams.setTimeout(params, TimeUnit.SECONDS.toMillis(this.leaseTimeout));
+        HttpConnectionParams.setConnectionTimeout(params, (int) TimeUnit.SECONDS.toMillis(this.connectTimeout));
+        // Longest we wait on a read, so also the longest Tower can take to answer
+        HttpConnectionParams.setSoTimeout(params, (int) TimeUnit.SECONDS.toMillis(this.socketTimeout));
+
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        registry.register(new Scheme("https", sf, 443));
+
+        connectionManager = new ThreadSafeClientConnManager(registry);
+        // All of our traffic goes to the same route so the total and per route limits are the same
+        connectionManager.setMaxTotalConnections(this.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(this.maxConnections);
+        httpClient = new DefaultHttpClient(connectionManager, params);
+
+        synchronized (pools) {
+            pools.add(this);
+        }
+    }
+
+    public HttpClient getHttpClient() {
+        // Builds that started before a config change still hold this pool, their new requests go to the one that replaced it
+        TowerConnectionPool next = successor;
+        return next != null ? next.getHttpClient() : httpClient;
+    }
+
+    public SSLSocketFactory getSSLSocketFactory() { return sslSocketFactory; }
+    public boolean getTrustAllCerts() { return trustAllCerts; }
+    public int getMaxConnections() { return maxConnections; }
+    public int getIdleTimeout() { return idleTimeout; }
+    public int getConnectTimeout() { return connectTimeout; }
+    public int getSocketTimeout() { return socketTimeout; }
+    public int getLeaseTimeout() { return leaseTimeout; }
+    public boolean isRetired() { return retired; }
+    public boolean isShutdown() { return shutdown; }
+
+    public boolean isCompatible(
+            boolean trustAllCerts, int maxConnections, int idleTimeout, int connectTimeout, int socketTimeout, int leaseTimeout
+    ) {
+        return this.trustAllCerts == trustAllCerts &&
+               this.maxConnections == (maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS) &&
+               this.idleTimeout == (idleTimeout > 0 ? idleTimeout : DEFAULT_IDLE_TIMEOUT) &&
+               this.connectTimeout == (connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT) &&
+               this.socketTimeout == (socketTimeout > 0 ? socketTimeout : DEFAULT_SOCKET_TIMEOUT) &&
+               this.leaseTimeout == (leaseTimeout > 0 ? leaseTimeout : DEFAULT_LEASE_TIMEOUT);
+    }
+
+    // The installation no longer uses this pool. New requests from builds that still hold it go to the successor
+    // (if there is one) and the connection manager is shut down once the requests already in flight here are done.
+    public void retire(TowerConnectionPool successor) {
+        this.successor = successor;
+        this.retired = true;
+        closeIdleConnections();
+    }
+
+    public void closeIdleConnections() {
+        if(retired) {
+            // Connections only come back here to be released, there is no point keeping any of them open
+            connectionManager.closeIdleConnections(0, TimeUnit.SECONDS);
+            if(connectionManager.getConnectionsInPool() == 0) { shutdown(); }
+            return;
+        }
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        synchronized (pools) {
+            pools.remove(this);
+        }
+        shutdown = true;
+        connectionManager.shutdown();
+    }
+
+    private static List<TowerConnectionPool> all() {
+        synchronized (pools) {
+            return new ArrayList<TowerConnectionPool>(pools);
+        }
+    }
+
+    @Extension
+    public static class IdleConnectionReaper extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() { return TimeUnit.SECONDS.toMillis(15); }
+
+        @Override
+        protected void doRun() {
+            for(TowerConnectionPool pool : TowerConnectionPool.all()) {
+                pool.closeIdleConnections();
+            }
+        }
+    }
+}
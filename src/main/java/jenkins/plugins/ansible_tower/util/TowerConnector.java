@@ -1,63 +1,125 @@
 package jenkins.plugins.ansible_tower.util;
 
 import com.google.common.net.HttpHeaders;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import jenkins.plugins.ansible_tower.AnsibleTowerItemDoesNotExist;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
-import java.security.KeyStore;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.sf.json.JSONObject;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpVersion;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 
 public class TowerConnector {
     private static final int GET = 1;
     private static final int POST = 2;
+    private static final int EVENT_PAGE_SIZE = 200;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_DELAY = 500;
+    private static final long RETRY_MAX_DELAY = 8000;
+    private static final String JOB_TEMPLATES = "/api/v1/job_templates/";
+    private static final String INVENTORIES = "/api/v1/inventories/";
+    private static final String CREDENTIALS = "/api/v1/credentials/";
+    private static final String AUTH_TOKEN = "/api/v1/authtoken/";
+    // What the stdout endpoint sends in place of the output once it is over Tower's STDOUT_MAX_BYTES_DISPLAY
+    private static final String STDOUT_TOO_LARGE = "Standard Output too large to display";
+
+    // Shared by every connector, name lookups are short so a handful of threads goes a long way
+    private static final ExecutorService lookupExecutor;
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Ansible Tower name lookup")
+        );
+        executor.allowCoreThreadTimeOut(true);
+        lookupExecutor = executor;
+    }
 
     private String url = null;
     private String username = null;
     private String password = null;
-    private boolean trustAllCerts = true;
+    private TowerConnectionPool connectionPool = null;
+    private boolean ownsConnectionPool = false;
     private boolean debug = false;
     private TowerLogger logger = new TowerLogger();
-    private Vector<Integer> displayedEvents = new Vector<Integer>();
-
-    public TowerConnector(String url, String username, String password) {
+    private TowerNameCache nameCache = null;
+    private TowerRequestLimiter requestLimiter = null;
+    private TowerCircuitBreaker circuitBreaker = null;
+    private TowerTokenCache tokenCache = null;
+    private String credentialsFingerprint = null;
+    private TowerValidatorCache validatorCache = null;
+    private boolean compression = false;
+    private TowerTrafficStats trafficStats = null;
+    private TowerNodeBalancer nodeBalancer = null;
+    private TowerNodeBalancer.Node stickyNode = null;
+    private boolean retryRequests = true;
+    // Total time our requests spent waiting on the limiter, the runner reports it in the build log
+    private final AtomicLong queuedMillis = new AtomicLong();
+    private TowerEventWindow seenEvents = new TowerEventWindow();
+    private int stdoutLine = 0;
+    // A copy of the two above taken each time output has been flushed to the build log
+    private volatile LogCursor logCursor = new LogCursor(new TowerEventWindow(), 0);
+    // Set once Tower stops handing out stdout for the job, the rest of its output comes from the job events
+    private boolean stdoutTooLarge = false;
+
+    public TowerConnector(String url, String username, String password) throws AnsibleTowerException {
         this(url, username, password, false);
     }
 
-    public TowerConnector(String url, String username, String password, Boolean trustAllCerts) {
+    public TowerConnector(String url, String username, String password, Boolean trustAllCerts) throws AnsibleTowerException {
+        this(url, username, password, new TowerConnectionPool(trustAllCerts, 0, 0, 0, 0, 0), true);
+    }
+
+    public TowerConnector(String url, String username, String password, TowerConnectionPool connectionPool) {
+        this(url, username, password, connectionPool, false);
+    }
+
+    private TowerConnector(String url, String username, String password, TowerConnectionPool connectionPool, boolean ownsConnectionPool) {
         this.url = url;
         this.username = username;
         this.password = password;
-        this.trustAllCerts = trustAllCerts;
-    }
-
-    public void setTrustAllCerts(boolean trustAllCerts) {
-        this.trustAllCerts = trustAllCerts;
+        this.connectionPool = connectionPool;
+        this.ownsConnectionPool = ownsConnectionPool;
     }
 
     public void setDebug(boolean debug) {
@@ -65,43 +127,161 @@ public class TowerConnector {
         logger.setDebugging(debug);
     }
 
-    private DefaultHttpClient getHttpClient() throws AnsibleTowerException {
-        if(trustAllCerts) {
-            logger.logMessage("Forcing cert trust");
-            TrustingSSLSocketFactory sf;
-            try {
-                KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                trustStore.load(null, null);
-                sf = new TrustingSSLSocketFactory(trustStore);
-            } catch(Exception e) {
-                throw new AnsibleTowerException("Unable to create trusting SSL socket factory");
+    public void setNameCache(TowerNameCache nameCache) {
+        this.nameCache = nameCache;
+    }
+
+    public void setRequestLimiter(TowerRequestLimiter requestLimiter) {
+        this.requestLimiter = requestLimiter;
+    }
+
+    public void setCircuitBreaker(TowerCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public void setTokenCache(TowerTokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    public void setValidatorCache(TowerValidatorCache validatorCache) {
+        this.validatorCache = validatorCache;
+    }
+
+    // Asks Tower to compress its responses, they are inflated as they are read
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public void setTrafficStats(TowerTrafficStats trafficStats) {
+        this.trafficStats = trafficStats;
+    }
+
+    // Identifies our credentials to the token cache, worked out from the username and password if not given
+    public void setCredentialsFingerprint(String credentialsFingerprint) {
+        this.credentialsFingerprint = credentialsFingerprint;
+    }
+
+    // Health checks want to know about the first failure, not have it papered over
+    public void setRetryRequests(boolean retryRequests) {
+        this.retryRequests = retryRequests;
+    }
+
+    // Spreads our reads across a clustered Tower, launches and the event stream stay on one node for the connector's life
+    public void setNodeBalancer(TowerNodeBalancer nodeBalancer) {
+        this.nodeBalancer = nodeBalancer;
+        this.stickyNode = nodeBalancer.choose(null);
+        this.url = stickyNode.getURL();
+    }
+
+    // Returns how long our requests have been held back by the limiter since the last time we were asked
+    public long takeQueuedMillis() {
+        return queuedMillis.getAndSet(0);
+    }
+
+    // How far into the job output we have printed, a build that resumes after a restart hands this back in.
+    // Saving the pipeline reads these while an import may be waiting on Tower, so they come from the last
+    // snapshot rather than our lock. The snapshot is only taken once output is in the build log, it never runs ahead.
+    public TowerEventWindow getSeenEvents() { return logCursor.seenEvents.copy(); }
+    public int getStdoutLine() { return logCursor.stdoutLine; }
+
+    public synchronized void setLogCursor(TowerEventWindow seenEvents, int stdoutLine) {
+        this.seenEvents = seenEvents.copy();
+        this.stdoutLine = stdoutLine;
+        publishLogCursor();
+    }
+
+    // Called with our lock held after the output it covers has been flushed
+    private void publishLogCursor() {
+        logCursor = new LogCursor(seenEvents.copy(), stdoutLine);
+    }
+
+    public void close() {
+        // Only tear down a pool we created ourselves, shared pools belong to their TowerInstallation
+        if(ownsConnectionPool) { connectionPool.shutdown(); }
+    }
+
+    private void releaseResponse(HttpResponse response) {
+        if(response.getEntity() == null) { return; }
+        try {
+            response.getEntity().consumeContent();
+        } catch(IOException ioe) {
+            logger.logMessage("Unable to release response: "+ ioe.getMessage());
+            // We couldn't read to the end so the connection can't be reused, drop it instead of leaking it
+            if(response.getEntity() instanceof ConnectionReleaseTrigger) {
+                try {
+                    ((ConnectionReleaseTrigger) response.getEntity()).abortConnection();
+                } catch(IOException abortFailure) {
+                    logger.logMessage("Unable to abort connection: "+ abortFailure.getMessage());
+                }
             }
-            sf.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        }
+    }
 
-            HttpParams params = new BasicHttpParams();
-            HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-            HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+    private String getAuthorizationHeader() throws AnsibleTowerException {
+        return getAuthorizationHeader(getAuthToken());
+    }
 
-            SchemeRegistry registry = new SchemeRegistry();
-            registry.register(new Scheme("https", sf, 443));
+    private String getAuthorizationHeader(String token) {
+        if(token != null) { return "Token "+ token; }
+        if(this.username == null && this.password == null) { return null; }
+        logger.logMessage("Adding auth for "+ this.username);
+        String auth = this.username + ":" + this.password;
+        byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(Charset.forName("US-ASCII")));
+        return "Basic " + new String(encodedAuth);
+    }
 
-            ClientConnectionManager ccm = new ThreadSafeClientConnManager(params, registry);
+    // The installation's cached token for our credentials, or null if we are sending Basic auth
+    private String getAuthToken() throws AnsibleTowerException {
+        if(tokenCache == null || (this.username == null && this.password == null)) { return null; }
+        if(credentialsFingerprint == null) { credentialsFingerprint = DigestUtils.sha256Hex(this.username +":"+ this.password); }
+        return tokenCache.getToken(credentialsFingerprint, this);
+    }
 
-            return new DefaultHttpClient(ccm, params);
-        } else {
-            return new DefaultHttpClient();
+    // Trades our username and password for a token, returns null if this Tower has no token endpoint
+    public TowerJsonReader.AuthToken requestAuthToken() throws AnsibleTowerException {
+        JSONObject postBody = new JSONObject();
+        postBody.put("username", this.username);
+        postBody.put("password", this.password);
+        HttpResponse response = executeRequest(POST, AUTH_TOKEN, postBody, null, null);
+        decodeResponse(response);
+        int statusCode = response.getStatusLine().getStatusCode();
+        if(statusCode == 200 || statusCode == 201) {
+            try (InputStream content = response.getEntity().getContent()) {
+                return TowerJsonReader.readAuthToken(content);
+            } catch(IOException ioe) {
+                throw new AnsibleTowerException("Unable to read auth token response: "+ ioe.getMessage());
+            }
         }
+        releaseResponse(response);
+        if(statusCode == 404) { return null; }
+        if(statusCode == 400 || statusCode == 401) { throw new AnsibleTowerException("Username/password invalid"); }
+        throw new AnsibleTowerException("Unexpected error code returned when requesting an auth token ("+ statusCode +")");
+    }
+
+    // Tower (or the proxy in front of it) answering like this means try again later, not that the request is wrong
+    private static boolean isUnavailable(HttpResponse response) {
+        int statusCode = response.getStatusLine().getStatusCode();
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    // Exponential backoff, each wait is somewhere between half and all of the doubled delay
+    private static long retryDelay(int attempt) {
+        long delay = Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << (attempt - 1));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
     }
 
     private HttpResponse makeRequest(int requestType, String endpoint) throws AnsibleTowerException {
         return makeRequest(requestType, endpoint, null);
     }
 
-    private HttpResponse makeRequest(int requestType, String endpoint, JSONObject body) throws AnsibleTowerException {
+    private HttpUriRequest buildRequest(
+            int requestType, String baseURL, String endpoint, JSONObject body, String authHeader,
+            TowerValidatorCache.Entry validators
+    ) throws AnsibleTowerException {
         // Parse the URL
         URI myURI;
         try {
-            myURI = new URI(url+endpoint);
+            myURI = new URI(baseURL+endpoint);
         } catch(Exception e) {
             throw new AnsibleTowerException("URL issue: "+ e.getMessage());
         }
@@ -128,70 +308,231 @@ public class TowerConnector {
         }
 
 
-        if(this.username != null || this.password != null) {
-            logger.logMessage("Adding auth for "+ this.username);
-            String auth = this.username + ":" + this.password;
-            byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(Charset.forName("US-ASCII")));
-            String authHeader = "Basic " + new String(encodedAuth);
+        if(authHeader != null) {
             request.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
         }
+        if(compression) {
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        }
+        if(validators != null) {
+            if(validators.getETag() != null) { request.setHeader(HttpHeaders.IF_NONE_MATCH, validators.getETag()); }
+            if(validators.getLastModified() != null) { request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified()); }
+        }
+        return request;
+    }
 
-        DefaultHttpClient httpClient = getHttpClient();
-        HttpResponse response;
-        try {
-            response = httpClient.execute(request);
-        } catch(Exception e) {
-            throw new AnsibleTowerException("Unable to make tower request: "+ e.getMessage());
+    private HttpResponse makeRequest(int requestType, String endpoint, JSONObject body) throws AnsibleTowerException {
+        return makeRequest(requestType, endpoint, body, null);
+    }
+
+    private HttpResponse makeRequest(
+            int requestType, String endpoint, JSONObject body, TowerValidatorCache.Entry validators
+    ) throws AnsibleTowerException {
+        String token = getAuthToken();
+        HttpResponse response = executeRequest(requestType, endpoint, body, getAuthorizationHeader(token), validators);
+        if(token != null && response.getStatusLine().getStatusCode() == 401) {
+            // Tower expired or revoked the token before we expected, get a fresh one and try once more
+            releaseResponse(response);
+            tokenCache.invalidate(token);
+            token = getAuthToken();
+            response = executeRequest(requestType, endpoint, body, getAuthorizationHeader(token), validators);
         }
 
+        decodeResponse(response);
+
         if(response.getStatusLine().getStatusCode() == 404) {
-            throw new AnsibleTowerException("The job id does not exist");
+            releaseResponse(response);
+            throw new AnsibleTowerItemDoesNotExist("The job id does not exist");
         } else if(response.getStatusLine().getStatusCode() == 401) {
+            releaseResponse(response);
             throw new AnsibleTowerException("Username/password invalid");
         }
 
         return response;
     }
 
+    // Swaps in an entity that inflates (and counts) the body as it is read
+    private void decodeResponse(HttpResponse response) throws AnsibleTowerException {
+        HttpEntity entity = response.getEntity();
+        if(entity == null || (!compression && trafficStats == null)) { return; }
+        String encoding = entity.getContentEncoding() == null ? null : entity.getContentEncoding().getValue();
+        if(!TowerDecodingEntity.canDecode(encoding)) {
+            releaseResponse(response);
+            throw new AnsibleTowerException("Tower sent a response with an unsupported encoding ("+ encoding +")");
+        }
+        response.setEntity(new TowerDecodingEntity(entity, encoding, trafficStats));
+    }
+
+    private interface ResponseReader<T> {
+        T read(InputStream content) throws IOException, AnsibleTowerException;
+    }
+
+    // GETs the endpoint and parses a 200 with reader. If Tower gave us validators last time we ask it to answer 304
+    // when nothing has changed and reuse what we parsed then. Whatever reader returns is shared, it must not be modified.
+    @SuppressWarnings("unchecked")
+    private <T> T getParsed(String endpoint, ResponseReader<T> reader) throws AnsibleTowerException {
+        TowerValidatorCache.Entry validators = validatorCache == null ? null : validatorCache.get(endpoint);
+        HttpResponse response = makeRequest(GET, endpoint, null, validators);
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        if(statusCode == 304 && validators != null) {
+            releaseResponse(response);
+            logger.logMessage("Not modified, reusing the last response for "+ endpoint);
+            return (T) validators.getValue();
+        }
+        if(statusCode != 200) {
+            releaseResponse(response);
+            throw new AnsibleTowerException("Unexpected error code returned ("+ statusCode +")");
+        }
+
+        T value;
+        try (InputStream content = response.getEntity().getContent()) {
+            value = reader.read(content);
+        } catch(IOException ioe) {
+            throw new AnsibleTowerException("Unable to read response and convert it into json: "+ ioe.getMessage());
+        }
+        if(validatorCache != null) {
+            validatorCache.put(
+                    endpoint, headerValue(response, HttpHeaders.ETAG), headerValue(response, HttpHeaders.LAST_MODIFIED), value
+            );
+        }
+        return value;
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    // Sends the request with retries for GETs, the response is handed back whatever its status code
+    private HttpResponse executeRequest(
+            int requestType, String endpoint, JSONObject body, String authHeader, TowerValidatorCache.Entry validators
+    ) throws AnsibleTowerException {
+        // Only a GET is safe to send again, retrying a launch could start the job twice
+        int attempts = requestType == GET && retryRequests ? MAX_ATTEMPTS : 1;
+        HttpResponse response;
+        Exception failure;
+        TowerNodeBalancer.Node node = null;
+        for(int attempt = 1; ; attempt++) {
+            // Reads go to whichever cluster node is least busy (a retry moves off the node that just failed),
+            // everything else stays on the node this connector was given so a build's launch sticks to one node
+            if(nodeBalancer != null) { node = requestType == GET ? nodeBalancer.choose(node) : stickyNode; }
+            String baseURL = node == null ? url : node.getURL();
+            HttpUriRequest request = buildRequest(requestType, baseURL, endpoint, body, authHeader, validators);
+
+            if(requestLimiter != null) {
+                try {
+                    queuedMillis.addAndGet(requestLimiter.acquire());
+                } catch(InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new AnsibleTowerException("Interrupted while waiting to make a tower request");
+                }
+            }
+
+            // The in flight slot covers the time Tower spends on the request, reading the body happens on our side
+            response = null;
+            failure = null;
+            try {
+                if(circuitBreaker != null && !circuitBreaker.allowRequest()) {
+                    throw new AnsibleTowerException("Tower at "+ baseURL +" has been failing, not sending requests until it recovers");
+                }
+                if(node != null) { nodeBalancer.acquire(node); }
+                try {
+                    response = connectionPool.getHttpClient().execute(request);
+                } catch(Exception e) {
+                    failure = e;
+                }
+                if(node != null) {
+                    if(failure instanceof ConnectionPoolTimeoutException) {
+                        nodeBalancer.release(node);
+                    } else {
+                        nodeBalancer.release(node, failure == null && !isUnavailable(response));
+                    }
+                }
+            } finally {
+                if(requestLimiter != null) { requestLimiter.release(); }
+            }
+
+            boolean unavailable = failure != null || isUnavailable(response);
+            if(circuitBreaker != null) {
+                if(failure instanceof ConnectionPoolTimeoutException) {
+                    // Every connection was busy on our side, that says nothing about Tower
+                    circuitBreaker.recordSkipped();
+                } else if(unavailable) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    circuitBreaker.recordSuccess();
+                }
+            }
+            if(!unavailable || attempt >= attempts) { break; }
+
+            if(response != null) { releaseResponse(response); }
+            long delay = retryDelay(attempt);
+            logger.logMessage("Request to "+ baseURL + endpoint +" failed ("+ (failure != null ? failure.getMessage() : response.getStatusLine()) +"), retrying in "+ delay +" ms");
+            try {
+                Thread.sleep(delay);
+            } catch(InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new AnsibleTowerException("Interrupted while waiting to retry a tower request");
+            }
+        }
+        if(failure != null) {
+            throw new AnsibleTowerException("Unable to make tower request: "+ failure.getMessage());
+        }
+        return response;
+    }
+
 
     public void testConnection() throws AnsibleTowerException {
         if(url == null) { throw new AnsibleTowerException("The URL is undefined"); }
 
         HttpResponse response = makeRequest(GET, "/api/v1/ping/");
+        releaseResponse(response);
 
         if(response.getStatusLine().getStatusCode() != 200) {
             throw new AnsibleTowerException("Unexpected error code returned from test connection ("+ response.getStatusLine().getStatusCode() +")");
         }
     }
 
-    private String convertPotentialStringToID(String idToCheck, String api_endpoint) throws AnsibleTowerException {
+    private String convertPotentialStringToID(final String idToCheck, String api_endpoint) throws AnsibleTowerException {
         try {
             int asAnInt = Integer.parseInt(idToCheck);
             return idToCheck;
         } catch(NumberFormatException nfe) {
             // We were probablly given a name, lets try and resolve the name to an ID
-            HttpResponse response = makeRequest(GET, api_endpoint);
-            JSONObject responseObject;
-            try {
-                responseObject = JSONObject.fromObject(EntityUtils.toString(response.getEntity()));
-            } catch (IOException ioe) {
-                throw new AnsibleTowerException("Unable to convert response for templates into json: " + ioe.getMessage());
+            if(nameCache != null) {
+                Integer cachedID = nameCache.get(api_endpoint, idToCheck);
+                if(cachedID != null) { return ""+ cachedID; }
             }
-            // If we didn't get results, fail
-            if(!responseObject.containsKey("results")) {
-                throw new AnsibleTowerException("Response for templates does not contain results");
+
+            // Have Tower filter on the name so we only get the matches back, there may still be more than one page
+            String endpoint;
+            try {
+                endpoint = api_endpoint +"?name="+ URLEncoder.encode(idToCheck, "UTF-8");
+            } catch(UnsupportedEncodingException uee) {
+                throw new AnsibleTowerException("Unable to encode name "+ idToCheck +": "+ uee.getMessage());
             }
 
             // Start with an invalid id
             int foundID = -1;
-            // Loop over the results, if one of the items has the name copy its ID
-            // If there are more than one job with the same name, fail
-            for(Object returnedItem : responseObject.getJSONArray("results")) {
-                if(((JSONObject) returnedItem).getString("name").equals(idToCheck)) {
+            while(endpoint != null) {
+                Page<List<Integer>> page = getParsed(endpoint, new ResponseReader<Page<List<Integer>>>() {
+                    @Override
+                    public Page<List<Integer>> read(InputStream content) throws IOException, AnsibleTowerException {
+                        List<Integer> matches = new ArrayList<Integer>();
+                        String next = TowerJsonReader.readNamedIDs(content, idToCheck, matches);
+                        return new Page<List<Integer>>(Collections.unmodifiableList(matches), next);
+                    }
+                });
+                endpoint = getNextPage(page.next);
+
+                // If one of the items has the name copy its ID
+                // If there are more than one job with the same name, fail
+                for(Integer match : page.items) {
                     if(foundID != -1) {
                         throw new AnsibleTowerException("The item "+ idToCheck +" is not unique");
                     } else {
-                        foundID = ((JSONObject) returnedItem).getInt("id");
+                        foundID = match;
                     }
                 }
             }
@@ -201,41 +542,86 @@ public class TowerConnector {
                 throw new AnsibleTowerException(("Unable to find item named "+ idToCheck));
             }
 
+            if(nameCache != null) { nameCache.put(api_endpoint, idToCheck, foundID); }
+
             // Turn the single jobID we found into the jobTemplate
             return ""+ foundID;
         }
 
     }
 
+    private Future<String> resolveID(final String idToCheck, final String api_endpoint) {
+        // Ids and names we already know don't need a round trip so there is no point handing them off
+        if(StringUtils.isNumeric(idToCheck)) {
+            return CompletableFuture.completedFuture(idToCheck);
+        }
+        Integer cachedID = getCachedID(idToCheck, api_endpoint);
+        if(cachedID != null) { return CompletableFuture.completedFuture(""+ cachedID); }
+        return lookupExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() throws AnsibleTowerException {
+                return convertPotentialStringToID(idToCheck, api_endpoint);
+            }
+        });
+    }
+
+    // The id the name cache holds for a name, null for ids and for names we would have to look up
+    private Integer getCachedID(String idToCheck, String api_endpoint) {
+        if(nameCache == null || StringUtils.isNumeric(idToCheck)) { return null; }
+        return nameCache.get(api_endpoint, idToCheck);
+    }
+
+    private String waitForID(
+            Future<String> lookup, String errorPrefix, List<String> lookupErrors, List<Future<String>> allLookups
+    ) throws AnsibleTowerException {
+        if(lookup == null) { return null; }
+        try {
+            return lookup.get();
+        } catch(ExecutionException ee) {
+            lookupErrors.add(errorPrefix + ee.getCause().getMessage());
+            return null;
+        } catch(InterruptedException ie) {
+            // Nobody is going to use the other names either, don't leave them tying up the lookup threads
+            for(Future<String> other : allLookups) {
+                if(other != null) { other.cancel(true); }
+            }
+            Thread.currentThread().interrupt();
+            throw new AnsibleTowerException("Interrupted while looking up names in Tower");
+        }
+    }
+
     public int submitJob(String jobTemplate, String extraVars, String limit, String jobTags, String inventory, String credential) throws AnsibleTowerException {
         if(jobTemplate == null || jobTemplate.isEmpty()) {
             throw new AnsibleTowerException("Job template can not be null");
         }
 
-        try {
-            jobTemplate = convertPotentialStringToID(jobTemplate, "/api/v1/job_templates/");
-        } catch(AnsibleTowerException ate) {
-            throw new AnsibleTowerException("Unable to find job template: "+ ate.getMessage());
+        // The lookups don't depend on each other so resolve them all at once and report every bad name together
+        // Only an id that came out of the name cache can be stale, remember whether the template's did
+        Integer cachedTemplateID = getCachedID(jobTemplate, JOB_TEMPLATES);
+        Future<String> jobTemplateLookup = cachedTemplateID != null
+                ? CompletableFuture.completedFuture(""+ cachedTemplateID) : resolveID(jobTemplate, JOB_TEMPLATES);
+        Future<String> inventoryLookup = null;
+        if(inventory != null && !inventory.isEmpty()) { inventoryLookup = resolveID(inventory, INVENTORIES); }
+        Future<String> credentialLookup = null;
+        if(credential != null && !credential.isEmpty()) { credentialLookup = resolveID(credential, CREDENTIALS); }
+
+        List<Future<String>> lookups = Arrays.asList(jobTemplateLookup, inventoryLookup, credentialLookup);
+        List<String> lookupErrors = new ArrayList<String>();
+        String jobTemplateID = waitForID(jobTemplateLookup, "Unable to find job template: ", lookupErrors, lookups);
+        inventory = waitForID(inventoryLookup, "Unable to find inventory: ", lookupErrors, lookups);
+        credential = waitForID(credentialLookup, "Unable to find credential: ", lookupErrors, lookups);
+        if(!lookupErrors.isEmpty()) {
+            throw new AnsibleTowerException(StringUtils.join(lookupErrors, ", "));
         }
 
         JSONObject postBody = new JSONObject();
         // I decided not to check if these were integers.
         // This way, Tower can throw an error if it needs to
         // And, in the future, if you can reference objects in tower via a tag/name we don't have to undo work here
-        if(inventory != null && !inventory.isEmpty()) {
-            try {
-                inventory = convertPotentialStringToID(inventory, "/api/v1/inventories/");
-            } catch(AnsibleTowerException ate) {
-                throw new AnsibleTowerException("Unable to find inventory: "+ ate.getMessage());
-            }
+        if(inventory != null) {
             postBody.put("inventory", inventory);
         }
-        if(credential != null && !credential.isEmpty()) {
-            try {
-                credential = convertPotentialStringToID(credential, "/api/v1/credentials/");
-            } catch(AnsibleTowerException ate) {
-                throw new AnsibleTowerException("Unable to find credential: "+ ate.getMessage());
-            }
+        if(credential != null) {
             postBody.put("credential", credential);
         }
         if(limit != null && !limit.isEmpty()) {
@@ -247,117 +633,375 @@ public class TowerConnector {
         if(extraVars != null && !extraVars.isEmpty()) {
             postBody.put("extra_vars", extraVars);
         }
-        HttpResponse response = makeRequest(POST, "/api/v1/job_templates/" + jobTemplate + "/launch/", postBody);
 
-        if(response.getStatusLine().getStatusCode() == 201) {
-            JSONObject responseObject;
-            String json;
+        try {
+            return launchJobTemplate(jobTemplateID, postBody);
+        } catch(AnsibleTowerItemDoesNotExist dne) {
+            // The template may have been deleted and recreated since we cached its name, look it up again once
+            // A name we just looked up is as fresh as it gets, asking again would only find the same id
+            if(cachedTemplateID == null) { throw dne; }
+            nameCache.invalidate(JOB_TEMPLATES, jobTemplate);
             try {
-                json = EntityUtils.toString(response.getEntity());
-                responseObject = JSONObject.fromObject(json);
+                jobTemplateID = convertPotentialStringToID(jobTemplate, JOB_TEMPLATES);
+            } catch(AnsibleTowerException ate) {
+                throw new AnsibleTowerException("Unable to find job template: "+ ate.getMessage());
+            }
+            return launchJobTemplate(jobTemplateID, postBody);
+        }
+    }
+
+    private int launchJobTemplate(String jobTemplateID, JSONObject postBody) throws AnsibleTowerException {
+        HttpResponse response = makeRequest(POST, JOB_TEMPLATES + jobTemplateID + "/launch/", postBody);
+
+        if(response.getStatusLine().getStatusCode() == 201) {
+            try (InputStream content = response.getEntity().getContent()) {
+                return TowerJsonReader.readID(content);
             } catch (IOException ioe) {
                 throw new AnsibleTowerException("Unable to read response and convert it into json: " + ioe.getMessage());
             }
+        }
 
-            if (responseObject.containsKey("id")) {
-                return responseObject.getInt("id");
-            }
-            logger.logMessage(json);
-            throw new AnsibleTowerException("Did not get a job ID from the request. Job response can be found in the jenkins.log");
-        } else if(response.getStatusLine().getStatusCode() == 400) {
+        releaseResponse(response);
+        if(response.getStatusLine().getStatusCode() == 400) {
             throw new AnsibleTowerException("Tower recieved a bad request (400 response code). This can happen if your extre vars, credentials, inventory, etc are bad");
         } else {
             throw new AnsibleTowerException("Unexpected error code returned ("+ response.getStatusLine().getStatusCode() +")");
         }
     }
 
+    public JobStatus getJobStatus(int jobID) throws AnsibleTowerException {
+        return getParsed("/api/v1/jobs/"+ jobID +"/", new ResponseReader<JobStatus>() {
+            @Override
+            public JobStatus read(InputStream content) throws IOException, AnsibleTowerException {
+                return TowerJsonReader.readJobStatus(content);
+            }
+        });
+    }
+
+    // Fetches the status of many jobs with a single listing query instead of one request per job
+    public Map<Integer, JobStatus> getJobStatuses(Collection<Integer> jobIDs) throws AnsibleTowerException {
+        Map<Integer, JobStatus> statuses = new HashMap<Integer, JobStatus>();
+        if(jobIDs.isEmpty()) { return statuses; }
+
+        StringBuilder ids = new StringBuilder();
+        for(Integer jobID : jobIDs) {
+            if(ids.length() > 0) { ids.append(","); }
+            ids.append(jobID);
+        }
+
+        String endpoint = "/api/v1/jobs/?id__in="+ ids +"&page_size="+ jobIDs.size();
+        while(endpoint != null) {
+            Page<Map<Integer, JobStatus>> page = getParsed(endpoint, new ResponseReader<Page<Map<Integer, JobStatus>>>() {
+                @Override
+                public Page<Map<Integer, JobStatus>> read(InputStream content) throws IOException, AnsibleTowerException {
+                    Map<Integer, JobStatus> pageStatuses = new HashMap<Integer, JobStatus>();
+                    String next = TowerJsonReader.readJobStatuses(content, pageStatuses);
+                    return new Page<Map<Integer, JobStatus>>(Collections.unmodifiableMap(pageStatuses), next);
+                }
+            });
+            statuses.putAll(page.items);
+            endpoint = getNextPage(page.next);
+        }
+        return statuses;
+    }
+
     public boolean isJobCommpleted(int jobID) throws AnsibleTowerException {
-        HttpResponse response = makeRequest(GET,"/api/v1/jobs/"+ jobID +"/");
+        return getJobStatus(jobID).isFinished();
+    }
 
-        if(response.getStatusLine().getStatusCode() == 200) {
-            JSONObject responseObject;
-            String json;
+
+    // Subscribes to Tower's websocket for the job, the stream is already connecting when this returns
+    public TowerEventStream openEventStream(int jobID, TowerEventStream.Listener listener) throws AnsibleTowerException {
+        URI websocketURI;
+        try {
+            websocketURI = new URI(url.replaceFirst("^http", "ws") +"/websocket/");
+        } catch(Exception e) {
+            throw new AnsibleTowerException("URL issue: "+ e.getMessage());
+        }
+
+        Map<String, String> headers = new HashMap<String, String>();
+        String authHeader = getAuthorizationHeader();
+        if(authHeader != null) { headers.put(HttpHeaders.AUTHORIZATION, authHeader); }
+
+        TowerEventStream stream = new TowerEventStream(websocketURI, headers, jobID, listener);
+        stream.setDebug(debug);
+        if(websocketURI.getScheme().equals("wss")) {
+            // Connect and handshake here with the same trust settings as the rest of our traffic to this Tower.
+            // Layering TLS over a connected socket for the real host is what gets us SNI and the hostname check,
+            // the client sees the socket is already connected and goes straight to the websocket handshake.
+            String host = websocketURI.getHost();
+            int port = websocketURI.getPort() == -1 ? 443 : websocketURI.getPort();
+            int connectTimeout = (int) TimeUnit.SECONDS.toMillis(connectionPool.getConnectTimeout());
+            Socket plain = new Socket();
             try {
-                json = EntityUtils.toString(response.getEntity());
-                responseObject = JSONObject.fromObject(json);
+                plain.connect(new InetSocketAddress(host, port), connectTimeout);
+                plain.setSoTimeout(connectTimeout);
+                Socket secure = connectionPool.getSSLSocketFactory().createSocket(plain, host, port, true);
+                // Events can be minutes apart, the stream must not time out between them
+                secure.setSoTimeout(0);
+                stream.setSocket(secure);
             } catch(IOException ioe) {
-                throw new AnsibleTowerException("Unable to read response and convert it into json: "+ ioe.getMessage());
+                try { plain.close(); } catch(IOException ignored) { }
+                throw new AnsibleTowerException("Unable to create websocket: "+ ioe.getMessage());
             }
-
-            if (responseObject.containsKey("finished")) {
-                String finished = responseObject.getString("finished");
-                if(finished == null || finished.equalsIgnoreCase("null")) {
-                    return false;
-                } else {
-                    return true;
-                }
-            }
-            logger.logMessage(json);
-            throw new AnsibleTowerException("Did not get a failed status from the request. Job response can be found in the jenkins.log");
-        } else {
-            throw new AnsibleTowerException("Unexpected error code returned (" + response.getStatusLine().getStatusCode() + ")");
         }
+        stream.connect();
+        return stream;
     }
 
+    // Prints an event that was pushed to us, unless polling got to it first.
+    // The caller keeps one writer for all its pushed events, it is flushed here so each event shows up straight away
+    public synchronized boolean logPushedEvent(int counter, String stdout, TowerLogWriter logWriter) {
+        if(!seenEvents.markSeen(counter)) { return false; }
+        logWriter.write(stdout);
+        logWriter.endLine();
+        logWriter.flush();
+        publishLogCursor();
+        return true;
+    }
 
-    public void logJobEvents(int jobID, PrintStream jenkinsLogger, boolean removeColor) throws AnsibleTowerException {
-        HttpResponse response = makeRequest(GET, "/api/v1/jobs/"+ jobID +"/job_events/");
+    public synchronized int logJobEvents(int jobID, PrintStream jenkinsLogger, boolean removeColor) throws AnsibleTowerException {
+        int newEvents = 0;
+        TowerLogWriter logWriter = new TowerLogWriter(jenkinsLogger, removeColor);
+        // Ask Tower for the events from the first one we are missing, in the order the job produced them.
+        // Anything that arrived ahead of a gap is skipped by the window. Large jobs span many pages
+        // so keep following next until we are caught up.
+        String endpoint = "/api/v1/jobs/"+ jobID +"/job_events/?order_by=counter&page_size="+ EVENT_PAGE_SIZE +"&counter__gt="+ seenEvents.getPollAfter();
+        while(endpoint != null) {
+            HttpResponse response = makeRequest(GET, endpoint);
+
+            if(response.getStatusLine().getStatusCode() != 200) {
+                releaseResponse(response);
+                throw new AnsibleTowerException("Unexpected error code returned ("+ response.getStatusLine().getStatusCode() +")");
+            }
 
-        if(response.getStatusLine().getStatusCode() == 200) {
-            JSONObject responseObject;
-            String json;
-            try {
-                json = EntityUtils.toString(response.getEntity());
-                responseObject = JSONObject.fromObject(json);
+            EventPrinter printer = new EventPrinter(logWriter);
+            try (InputStream content = response.getEntity().getContent()) {
+                endpoint = getNextPage(TowerJsonReader.readJobEvents(content, printer));
             } catch(IOException ioe) {
                 throw new AnsibleTowerException("Unable to read response and convert it into json: "+ ioe.getMessage());
+            } finally {
+                logWriter.flush();
+                publishLogCursor();
             }
+            newEvents += printer.printed;
+        }
+        return newEvents;
+    }
 
-            logger.logMessage(json);
-            ClassLoader cl = ClassLoader.getSystemClassLoader();
-
-            if(responseObject.containsKey("results")) {
-                for(Object anEvent : responseObject.getJSONArray("results")) {
-                    Integer eventId = ((JSONObject) anEvent).getInt("id");
-                    String stdOut = ((JSONObject) anEvent).getString("stdout");
-                    if(!displayedEvents.contains(eventId)) {
-                        displayedEvents.add(eventId);
-                        String[] lines = stdOut.split("\\r\\n");
-                        for(String line : lines) {
-                            if(removeColor) {
-                                // This regex was found on https://stackoverflow.com/questions/14652538/remove-ascii-color-codes
-                                line = line.replaceAll("\u001B\\[[;\\d]*m", "");
-                            }
-                            jenkinsLogger.println( line );
-                        }
-                    }
+    // Imports the job's stdout starting from the first line we have not printed yet.
+    // Only whole lines are printed (and counted), a partial last line is picked up again by the next call
+    // unless the job has finished in which case nothing more is coming.
+    public synchronized int logJobStdout(int jobID, PrintStream jenkinsLogger, boolean removeColor, boolean jobFinished) throws AnsibleTowerException {
+        if(stdoutTooLarge) { return logJobEvents(jobID, jenkinsLogger, removeColor); }
+        HttpResponse response = makeRequest(GET, "/api/v1/jobs/"+ jobID +"/stdout/?format=json&content_format=ansi&start_line="+ stdoutLine);
+
+        if(response.getStatusLine().getStatusCode() != 200) {
+            releaseResponse(response);
+            throw new AnsibleTowerException("Unexpected error code returned ("+ response.getStatusLine().getStatusCode() +")");
+        }
+
+        TowerLogWriter logWriter = new TowerLogWriter(jenkinsLogger, removeColor);
+        CompleteLineWriter lineWriter = new CompleteLineWriter(logWriter);
+        TooLargeCheck tooLargeCheck = new TooLargeCheck(lineWriter);
+        try (InputStream content = response.getEntity().getContent()) {
+            TowerJsonReader.readStdoutContent(content, tooLargeCheck);
+            tooLargeCheck.finish();
+            if(jobFinished && !tooLargeCheck.tooLarge) { lineWriter.finish(); }
+        } catch(IOException ioe) {
+            throw new AnsibleTowerException("Unable to read response and convert it into json: "+ ioe.getMessage());
+        } finally {
+            logWriter.flush();
+        }
+        if(tooLargeCheck.tooLarge) {
+            // Tower only offers the whole file for download past this point, re-reading that on every poll would
+            // be far worse than the events so carry on from those
+            jenkinsLogger.println("The output of Tower job "+ jobID +" is too large for Tower to display, importing the rest of it from the job events");
+            skipEventsBeforeStdoutLine(jobID);
+            stdoutTooLarge = true;
+            return logJobEvents(jobID, jenkinsLogger, removeColor);
+        }
+        stdoutLine += lineWriter.lines;
+        publishLogCursor();
+        return lineWriter.lines;
+    }
+
+    // Marks every event whose output ends before the stdout line we got to as seen.
+    // An event we printed part of is printed again in full, better a few lines twice than lose any.
+    private void skipEventsBeforeStdoutLine(int jobID) throws AnsibleTowerException {
+        if(stdoutLine == 0) { return; }
+        HttpResponse response = makeRequest(GET, "/api/v1/jobs/"+ jobID +"/job_events/?order_by=-counter&page_size=1&end_line__lte="+ stdoutLine);
+
+        if(response.getStatusLine().getStatusCode() != 200) {
+            releaseResponse(response);
+            throw new AnsibleTowerException("Unexpected error code returned ("+ response.getStatusLine().getStatusCode() +")");
+        }
+
+        final int[] lastPrinted = {0};
+        try (InputStream content = response.getEntity().getContent()) {
+            TowerJsonReader.readJobEvents(content, new TowerJsonReader.EventHandler() {
+                @Override
+                public Writer startEvent(int counter) {
+                    lastPrinted[0] = Math.max(lastPrinted[0], counter);
+                    return null;
                 }
+
+                @Override
+                public void endEvent(int counter, int endLine) { }
+            });
+        } catch(IOException ioe) {
+            throw new AnsibleTowerException("Unable to read response and convert it into json: "+ ioe.getMessage());
+        }
+        // After a restart the saved window can already be past this point
+        if(lastPrinted[0] > seenEvents.getPollAfter()) { seenEvents = new TowerEventWindow(lastPrinted[0]); }
+    }
+
+    private String getNextPage(String next) {
+        if(next == null || next.isEmpty()) { return null; }
+        // Tower hands back the next page relative to the server but be tolerant of a full URL as well
+        if(next.startsWith(url)) { return next.substring(url.length()); }
+        if(nodeBalancer != null) {
+            for(String nodeURL : nodeBalancer.getURLs()) {
+                if(next.startsWith(nodeURL)) { return next.substring(nodeURL.length()); }
             }
-        } else {
-            throw new AnsibleTowerException("Unexpected error code returned ("+ response.getStatusLine().getStatusCode() +")");
         }
+        return next;
     }
 
     public boolean isJobFailed(int jobID) throws AnsibleTowerException {
-        HttpResponse response = makeRequest(GET,"/api/v1/jobs/"+ jobID +"/");
+        return getJobStatus(jobID).isFailed();
+    }
 
-        if(response.getStatusLine().getStatusCode() == 200) {
-            JSONObject responseObject;
-            String json;
-            try {
-                json = EntityUtils.toString(response.getEntity());
-                responseObject = JSONObject.fromObject(json);
-            } catch(IOException ioe) {
-                throw new AnsibleTowerException("Unable to read response and convert it into json: "+ ioe.getMessage());
+    // Passes whole lines through and holds back whatever follows the last newline
+    private static class CompleteLineWriter extends Writer {
+        private final TowerLogWriter out;
+        private final StringBuilder partial = new StringBuilder();
+        private int lines = 0;
+
+        private CompleteLineWriter(TowerLogWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            int lastNewLine = -1;
+            for(int i = off; i < off + len; i++) {
+                if(cbuf[i] == '\n') {
+                    lastNewLine = i;
+                    lines++;
+                }
+            }
+            if(lastNewLine == -1) {
+                partial.append(cbuf, off, len);
+                return;
             }
+            if(partial.length() > 0) {
+                out.write(partial.toString());
+                partial.setLength(0);
+            }
+            out.write(cbuf, off, lastNewLine + 1 - off);
+            partial.append(cbuf, lastNewLine + 1, off + len - lastNewLine - 1);
+        }
 
-            if (responseObject.containsKey("failed")) {
-                return responseObject.getBoolean("failed");
+        private void finish() {
+            if(partial.length() > 0) {
+                out.write(partial.toString());
+                partial.setLength(0);
+                out.endLine();
             }
-            logger.logMessage(json);
-            throw new AnsibleTowerException("Did not get a failed status from the request. Job response can be found in the jenkins.log");
-        } else {
-            throw new AnsibleTowerException("Unexpected error code returned (" + response.getStatusLine().getStatusCode() + ")");
+        }
+
+        @Override
+        public void flush() { }
+
+        @Override
+        public void close() { }
+    }
+
+    // Holds back the start of the stdout content until we know it is not Tower telling us the output is too large
+    private static class TooLargeCheck extends Writer {
+        private final Writer out;
+        private final StringBuilder start = new StringBuilder();
+        private boolean checked = false;
+        private boolean tooLarge = false;
+
+        private TooLargeCheck(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if(tooLarge) { return; }
+            if(!checked) {
+                int take = Math.min(len, STDOUT_TOO_LARGE.length() - start.length());
+                start.append(cbuf, off, take);
+                off += take;
+                len -= take;
+                if(start.length() < STDOUT_TOO_LARGE.length()) { return; }
+                checked = true;
+                if(start.toString().equals(STDOUT_TOO_LARGE)) {
+                    tooLarge = true;
+                    return;
+                }
+                out.write(start.toString());
+            }
+            if(len > 0) { out.write(cbuf, off, len); }
+        }
+
+        // Output shorter than the message never got passed on
+        private void finish() throws IOException {
+            if(!checked && start.length() > 0) { out.write(start.toString()); }
+            checked = true;
+        }
+
+        @Override
+        public void flush() { }
+
+        @Override
+        public void close() { }
+    }
+
+    private static class LogCursor {
+        private final TowerEventWindow seenEvents;
+        private final int stdoutLine;
+
+        private LogCursor(TowerEventWindow seenEvents, int stdoutLine) {
+            this.seenEvents = seenEvents;
+            this.stdoutLine = stdoutLine;
+        }
+    }
+
+    // One page of a listing as we keep it in the validator cache
+    private static class Page<T> {
+        private final T items;
+        private final String next;
+
+        private Page(T items, String next) {
+            this.items = items;
+            this.next = next;
+        }
+    }
+
+    private class EventPrinter implements TowerJsonReader.EventHandler {
+        private final TowerLogWriter logWriter;
+        private int printed = 0;
+
+        private EventPrinter(TowerLogWriter logWriter) {
+            this.logWriter = logWriter;
+        }
+
+        @Override
+        public Writer startEvent(int counter) {
+            if(!seenEvents.markSeen(counter)) { return null; }
+            printed++;
+            return logWriter;
+        }
+
+        @Override
+        public void endEvent(int counter, int endLine) {
+            logWriter.endLine();
+            // Keeps the stdout cursor right when we import events in place of stdout that got too large
+            if(endLine > stdoutLine) { stdoutLine = endLine; }
         }
     }
 }
@@ -0,0 +1,78 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Resolved Tower credentials by credentials id.
+ * Looking a credential up walks every username/password credential Jenkins has, on a large controller that adds up
+ * when every launch does it. Entries are dropped whenever the system credentials are saved and after a few minutes
+ * regardless, credentials that come from somewhere else (a vault provider say) don't tell us when they change.
+ */
+public class TowerCredentialsCache {
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    // Bumped on every invalidation so a lookup that raced with it doesn't put stale credentials back
+    private static final AtomicLong generation = new AtomicLong();
+
+    public static Entry get(String credentialsId) {
+        if(credentialsId == null || credentialsId.trim().isEmpty()) { return Entry.NONE; }
+        Entry entry = entries.get(credentialsId);
+        if(entry != null && System.currentTimeMillis() - entry.resolved < MAX_AGE) { return entry; }
+
+        long lookupGeneration = generation.get();
+        StandardUsernamePasswordCredentials creds = CredentialsMatchers.firstOrNull(
+                CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class),
+                CredentialsMatchers.withId(credentialsId)
+        );
+        entry = creds == null ? new Entry(null, null) : new Entry(creds.getUsername(), creds.getPassword().getPlainText());
+        if(lookupGeneration == generation.get()) { entries.put(credentialsId, entry); }
+        return entry;
+    }
+
+    public static void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public static class Entry {
+        private static final Entry NONE = new Entry(null, null);
+
+        private final String username;
+        private final String password;
+        private final String fingerprint;
+        private final long resolved = System.currentTimeMillis();
+
+        private Entry(String username, String password) {
+            this.username = username;
+            this.password = password;
+            this.fingerprint = DigestUtils.sha256Hex(username +":"+ password);
+        }
+
+        public String getUsername() { return username; }
+        public String getPassword() { return password; }
+        // Tells two versions of a credential apart without holding on to the password for comparison
+        public String getFingerprint() { return fingerprint; }
+    }
+
+    @Extension
+    public static class CredentialsChangeListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if(o instanceof SystemCredentialsProvider) { invalidate(); }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/*
+ * A response entity whose content is decompressed as it is read, so the JSON parser pulls from the inflater
+ * and a large page of events never has to sit in memory whole. Bytes are counted on both sides of the inflater.
+ */
+public class TowerDecodingEntity extends HttpEntityWrapper implements ConnectionReleaseTrigger {
+    private final String encoding;
+    private final TowerTrafficStats stats;
+
+    // encoding is the response's Content-Encoding (gzip, deflate or null for none)
+    public TowerDecodingEntity(HttpEntity wrapped, String encoding, TowerTrafficStats stats) {
+        super(wrapped);
+        this.encoding = encoding;
+        this.stats = stats;
+    }
+
+    public static boolean canDecode(String encoding) {
+        return encoding == null || encoding.equalsIgnoreCase("identity") ||
+               encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip") ||
+               encoding.equalsIgnoreCase("deflate");
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        InputStream wire = wrappedEntity.getContent();
+        if(stats != null) { wire = new CountingInputStream(wire, stats, true); }
+        InputStream decoded;
+        if(encoding == null || encoding.equalsIgnoreCase("identity")) {
+            decoded = wire;
+        } else if(encoding.equalsIgnoreCase("deflate")) {
+            // HTTP's deflate is zlib wrapped, which is what InflaterInputStream expects by default
+            decoded = new InflaterInputStream(wire);
+        } else {
+            decoded = new GZIPInputStream(wire);
+        }
+        if(stats != null) { decoded = new CountingInputStream(decoded, stats, false); }
+        return decoded;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        // Whoever reads us gets the decoded content
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return encoding == null || encoding.equalsIgnoreCase("identity") ? wrappedEntity.getContentLength() : -1;
+    }
+
+    @Override
+    public void releaseConnection() throws IOException {
+        if(wrappedEntity instanceof ConnectionReleaseTrigger) { ((ConnectionReleaseTrigger) wrappedEntity).releaseConnection(); }
+    }
+
+    @Override
+    public void abortConnection() throws IOException {
+        if(wrappedEntity instanceof ConnectionReleaseTrigger) { ((ConnectionReleaseTrigger) wrappedEntity).abortConnection(); }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final TowerTrafficStats stats;
+        private final boolean wire;
+
+        private CountingInputStream(InputStream in, TowerTrafficStats stats, boolean wire) {
+            super(in);
+            this.stats = stats;
+            this.wire = wire;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b != -1) { count(1); }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if(read > 0) { count(read); }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if(skipped > 0) { count(skipped); }
+            return skipped;
+        }
+
+        private void count(long bytes) {
+            if(wire) {
+                stats.addWireBytes(bytes);
+            } else {
+                stats.addDecodedBytes(bytes);
+            }
+        }
+    }
+}
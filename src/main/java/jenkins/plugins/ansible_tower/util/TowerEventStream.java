@@ -0,0 +1,109 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import org.apache.commons.codec.binary.Hex;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A subscription to Tower's websocket for a single job.
+ * Once Tower accepts the connection we join the job's event group and the job status group,
+ * events and status changes for our job are handed to the listener as they arrive.
+ * Anything that goes wrong just closes the stream, the caller is expected to fall back to polling.
+ * Tower only lets us join groups if the xrftoken we send matches the csrftoken cookie of the handshake,
+ * so we make up a token of our own and send it both ways.
+ */
+public class TowerEventStream extends WebSocketClient {
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final List<String> FINISHED_STATUSES = Arrays.asList("successful", "failed", "error", "canceled");
+    private static final SecureRandom random = new SecureRandom();
+
+    public interface Listener {
+        void onJobEvent(int counter, String stdout);
+        void onJobFinished(String status);
+        void onStreamClosed(String reason);
+    }
+
+    private final int jobID;
+    private final Listener listener;
+    private final String xrfToken;
+    private final TowerLogger logger = new TowerLogger();
+
+    public TowerEventStream(URI websocketURI, Map<String, String> headers, int jobID, Listener listener) {
+        this(websocketURI, headers, newXrfToken(), jobID, listener);
+    }
+
+    private TowerEventStream(URI websocketURI, Map<String, String> headers, String xrfToken, int jobID, Listener listener) {
+        super(websocketURI, new Draft_6455(), withCsrfCookie(headers, xrfToken), CONNECT_TIMEOUT);
+        this.jobID = jobID;
+        this.listener = listener;
+        this.xrfToken = xrfToken;
+    }
+
+    private static String newXrfToken() {
+        byte[] token = new byte[16];
+        random.nextBytes(token);
+        return Hex.encodeHexString(token);
+    }
+
+    private static Map<String, String> withCsrfCookie(Map<String, String> headers, String xrfToken) {
+        Map<String, String> withCookie = new HashMap<String, String>(headers);
+        String cookie = withCookie.get("Cookie");
+        withCookie.put("Cookie", (cookie == null || cookie.isEmpty() ? "" : cookie +"; ") +"csrftoken="+ xrfToken);
+        return withCookie;
+    }
+
+    public void setDebug(boolean debug) {
+        logger.setDebugging(debug);
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshake) {
+        logger.logMessage("Websocket opened for job "+ jobID);
+    }
+
+    @Override
+    public void onMessage(String message) {
+        TowerJsonReader.StreamMessage streamMessage;
+        try {
+            streamMessage = TowerJsonReader.readStreamMessage(message);
+        } catch(IOException | AnsibleTowerException e) {
+            logger.logMessage("Ignoring unreadable websocket message: "+ e.getMessage());
+            return;
+        }
+
+        if(streamMessage.accept) {
+            // Tower has authenticated us, ask for our job's events and for job status changes
+            send("{\"groups\": {\"jobs\": [\"status_changed\"], \"job_events\": ["+ jobID +"]}, \"xrftoken\": \""+ xrfToken +"\"}");
+        } else if(("job_events-"+ jobID).equals(streamMessage.groupName) || streamMessage.job == jobID) {
+            if(streamMessage.counter != -1) {
+                listener.onJobEvent(streamMessage.counter, streamMessage.stdout == null ? "" : streamMessage.stdout);
+            }
+        } else if("jobs".equals(streamMessage.groupName) && streamMessage.unifiedJobID == jobID) {
+            if(FINISHED_STATUSES.contains(streamMessage.status)) {
+                listener.onJobFinished(streamMessage.status);
+            }
+        }
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        logger.logMessage("Websocket for job "+ jobID +" closed ("+ code +") "+ reason);
+        listener.onStreamClosed(reason);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        // The client closes the connection after an error, onClose lets the listener know
+        logger.logMessage("Websocket error for job "+ jobID +": "+ e.getMessage());
+    }
+}
@@ -0,0 +1,89 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.io.Serializable;
+
+/*
+ * Which job events we have already printed, by the event's counter.
+ * Event ids come from one sequence shared by the whole of Tower so they say nothing about what we are missing,
+ * the counter numbers a job's events 1, 2, 3, ... as Ansible emits them. Tower doesn't always commit events
+ * in that order though, so we keep the counter below which everything has been printed plus a ring of bits
+ * for the events that arrived ahead of a gap. Polling starts from the gap, once it fills we move past it.
+ * Memory stays the same however many events a job has and checking a counter is a mask lookup.
+ */
+public class TowerEventWindow implements Serializable {
+    private static final long serialVersionUID = 2L;
+    // How far past a gap we keep track of before deciding the missing events are never coming
+    public static final int MAX_AHEAD = 1024;
+
+    // Every counter up to and including complete has been seen
+    private int complete;
+    // Bit (counter % MAX_AHEAD) is set if the counter has been seen, for counters in (complete, complete + MAX_AHEAD].
+    // Only allocated once something arrives out of order.
+    private long[] ahead = null;
+    private int aheadCount = 0;
+
+    public TowerEventWindow() {
+        this(0);
+    }
+
+    // Everything up to and including complete counts as seen
+    public TowerEventWindow(int complete) {
+        this.complete = Math.max(0, complete);
+    }
+
+    // Records the event, returns false if it was already seen
+    public boolean markSeen(int counter) {
+        if(counter <= complete) { return false; }
+        if(counter == complete + 1 && aheadCount == 0) {
+            // The usual case, events in order
+            complete = counter;
+            return true;
+        }
+        if(ahead == null) { ahead = new long[MAX_AHEAD / 64]; }
+        // Too far past the gap, give up on the oldest missing events so the window can move
+        while(counter - complete > MAX_AHEAD) { advance(); }
+        if(isAhead(counter)) { return false; }
+        setAhead(counter, true);
+        aheadCount++;
+        while(aheadCount > 0 && isAhead(complete + 1)) { advance(); }
+        return true;
+    }
+
+    public boolean isSeen(int counter) {
+        if(counter <= complete) { return true; }
+        if(counter - complete > MAX_AHEAD || ahead == null) { return false; }
+        return isAhead(counter);
+    }
+
+    // Polling asks for the events after this counter, anything it hands back that we have seen is skipped
+    public int getPollAfter() { return complete; }
+
+    public TowerEventWindow copy() {
+        TowerEventWindow copy = new TowerEventWindow(complete);
+        copy.ahead = ahead == null ? null : ahead.clone();
+        copy.aheadCount = aheadCount;
+        return copy;
+    }
+
+    private void advance() {
+        complete++;
+        if(ahead != null && isAhead(complete)) {
+            setAhead(complete, false);
+            aheadCount--;
+        }
+    }
+
+    private boolean isAhead(int counter) {
+        int slot = counter & (MAX_AHEAD - 1);
+        return (ahead[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void setAhead(int counter, boolean seen) {
+        int slot = counter & (MAX_AHEAD - 1);
+        if(seen) {
+            ahead[slot >>> 6] |= 1L << slot;
+        } else {
+            ahead[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+}
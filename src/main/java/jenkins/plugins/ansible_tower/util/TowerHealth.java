@@ -0,0 +1,108 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * What the health monitor knows about each node of a Tower installation.
+ * Every check records whether the node answered and how long it took, we keep the recent latencies
+ * around for percentiles and only call a node down once it has failed a couple of checks in a row.
+ */
+public class TowerHealth {
+    private static final int SAMPLES = 120;
+    private static final int DOWN_AFTER_FAILURES = 2;
+
+    public static class NodeHealth {
+        private final String url;
+        private final long[] latencies = new long[SAMPLES];
+        private int sampleCount = 0;
+        private int nextSample = 0;
+        private int consecutiveFailures = 0;
+        private boolean up = true;
+        private long lastChecked = 0;
+        private String lastError = null;
+
+        private NodeHealth(String url) {
+            this.url = url;
+        }
+
+        public String getURL() { return url; }
+        // Until the first check we have no reason to think the node is down
+        public synchronized boolean isUp() { return up; }
+        public synchronized long getLastChecked() { return lastChecked; }
+        public synchronized String getLastError() { return lastError; }
+
+        public synchronized void recordSuccess(long latency) {
+            latencies[nextSample] = latency;
+            nextSample = (nextSample + 1) % SAMPLES;
+            sampleCount = Math.min(SAMPLES, sampleCount + 1);
+            consecutiveFailures = 0;
+            up = true;
+            lastChecked = System.currentTimeMillis();
+        }
+
+        public synchronized void recordFailure(String error) {
+            lastError = error;
+            if(++consecutiveFailures >= DOWN_AFTER_FAILURES) { up = false; }
+            lastChecked = System.currentTimeMillis();
+        }
+
+        // Latency in milliseconds at the given percentile of the recent checks or -1 if we have none yet
+        public synchronized long getPercentile(int percentile) {
+            if(sampleCount == 0) { return -1; }
+            long[] sorted = Arrays.copyOf(latencies, sampleCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sampleCount) - 1;
+            return sorted[Math.max(0, Math.min(sampleCount - 1, index))];
+        }
+    }
+
+    private final List<NodeHealth> nodes = new ArrayList<NodeHealth>();
+    private TowerConnectionPool connectionPool = null;
+
+    public TowerHealth(List<String> urls) {
+        for(String url : urls) { nodes.add(new NodeHealth(url)); }
+    }
+
+    public List<NodeHealth> getNodes() { return Collections.unmodifiableList(nodes); }
+
+    public boolean isCompatible(List<String> urls) {
+        List<String> ours = new ArrayList<String>();
+        for(NodeHealth node : nodes) { ours.add(node.url); }
+        return ours.equals(urls);
+    }
+
+    // Down means every node is down, a cluster with one node left can still take our builds
+    public boolean isDown() {
+        for(NodeHealth node : nodes) {
+            if(node.isUp()) { return false; }
+        }
+        return true;
+    }
+
+    public String getLastError() {
+        for(NodeHealth node : nodes) {
+            if(!node.isUp()) { return node.getLastError(); }
+        }
+        return null;
+    }
+
+    // The monitor gets a small pool of its own so a busy installation can't stop us from seeing if Tower is up
+    public synchronized TowerConnectionPool getConnectionPool(boolean trustAllCerts) throws AnsibleTowerException {
+        if(connectionPool == null || !connectionPool.isCompatible(trustAllCerts, nodes.size(), 0, 5, 10, 5)) {
+            if(connectionPool != null) { connectionPool.shutdown(); }
+            connectionPool = new TowerConnectionPool(trustAllCerts, nodes.size(), 0, 5, 10, 5);
+        }
+        return connectionPool;
+    }
+
+    // The installation is gone or no longer made up of our nodes
+    public synchronized void shutdown() {
+        if(connectionPool != null) { connectionPool.shutdown(); }
+        connectionPool = null;
+    }
+}
@@ -0,0 +1,59 @@
+package jenkins.plugins.ansible_tower.util;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import jenkins.plugins.ansible_tower.AnsibleTowerGlobalConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pings every node of every configured Tower installation in the background.
+ * The results feed the health status page, let launches fail fast while an installation is down and
+ * keep a clustered installation's balancer away from nodes that stopped answering.
+ */
+@Extension
+public class TowerHealthMonitor extends AsyncPeriodicWork {
+    public TowerHealthMonitor() {
+        super("Ansible Tower health monitor");
+    }
+
+    @Override
+    public long getRecurrencePeriod() { return TimeUnit.SECONDS.toMillis(30); }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        AnsibleTowerGlobalConfig config = AnsibleTowerGlobalConfig.get();
+        if(config == null) { return; }
+        for(TowerInstallation installation : config.getTowerInstallation()) {
+            check(installation, listener);
+        }
+    }
+
+    private void check(TowerInstallation installation, TaskListener listener) {
+        TowerHealth health = installation.getHealth();
+        TowerConnectionPool pool;
+        try {
+            pool = health.getConnectionPool(installation.getTowerTrustCert());
+        } catch(AnsibleTowerException e) {
+            listener.getLogger().println("Unable to check "+ installation.getTowerDisplayName() +": "+ e.getMessage());
+            return;
+        }
+
+        for(TowerHealth.NodeHealth node : health.getNodes()) {
+            // The ping endpoint doesn't need credentials
+            TowerConnector connector = new TowerConnector(node.getURL(), null, null, pool);
+            connector.setRetryRequests(false);
+            long start = System.nanoTime();
+            try {
+                connector.testConnection();
+                node.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch(AnsibleTowerException e) {
+                node.recordFailure(e.getMessage());
+                listener.getLogger().println(installation.getTowerDisplayName() +" node "+ node.getURL() +" failed its check: "+ e.getMessage());
+            }
+        }
+        installation.applyHealth();
+    }
+}
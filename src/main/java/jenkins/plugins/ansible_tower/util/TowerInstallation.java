@@ -3,21 +3,29 @@ package jenkins.plugins.ansible_tower.util;
 import static com.cloudbees.plugins.credentials.CredentialsMatchers.instanceOf;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
-import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import hudson.Extension;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.model.Project;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
-import org.apache.commons.lang.StringUtils;
+import hudson.util.NamingThreadFactory;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class TowerInstallation extends AbstractDescribableImpl<TowerInstallation> {
     private static final long getSerialVersionUID = 1L;
@@ -26,6 +34,33 @@ public class TowerInstallation extends AbstractDescribableImpl<TowerInstallation
     private final String towerURL;
     private final String towerCredentialsId;
     private final boolean towerTrustCert;
+    private String towerNodeURLs = "";
+    private int towerMaxConnections = TowerConnectionPool.DEFAULT_MAX_CONNECTIONS;
+    private int towerIdleTimeout = TowerConnectionPool.DEFAULT_IDLE_TIMEOUT;
+    private int towerPollMinInterval = TowerPollingPolicy.DEFAULT_MIN_INTERVAL;
+    private int towerPollMaxInterval = TowerPollingPolicy.DEFAULT_MAX_INTERVAL;
+    private int towerConnectTimeout = TowerConnectionPool.DEFAULT_CONNECT_TIMEOUT;
+    private int towerSocketTimeout = TowerConnectionPool.DEFAULT_SOCKET_TIMEOUT;
+    private int towerLeaseTimeout = TowerConnectionPool.DEFAULT_LEASE_TIMEOUT;
+    private boolean towerPushEvents = false;
+    private boolean towerFailWhenDown = false;
+    private boolean towerCompression = false;
+    private int towerMaxConcurrentJobs = TowerLaunchLimiter.DEFAULT_MAX_CONCURRENT_JOBS;
+    private int towerRequestsPerSecond = TowerRequestLimiter.DEFAULT_REQUESTS_PER_SECOND;
+    private int towerMaxInFlight = TowerRequestLimiter.DEFAULT_MAX_IN_FLIGHT;
+
+    private transient TowerConnectionPool connectionPool = null;
+    private transient TowerJobPoller jobPoller = null;
+    private transient TowerNameCache nameCache = null;
+    private transient TowerLaunchLimiter launchLimiter = null;
+    private transient TowerRequestLimiter requestLimiter = null;
+    private transient TowerCircuitBreaker circuitBreaker = null;
+    private transient TowerNodeBalancer nodeBalancer = null;
+    private transient TowerHealth health = null;
+    private transient TowerTokenCache tokenCache = null;
+    private transient TowerValidatorCache validatorCache = null;
+    private transient TowerTrafficStats trafficStats = null;
+    private transient ThreadPoolExecutor executor = null;
 
     @DataBoundConstructor
     public TowerInstallation(String towerDisplayName, String towerURL, String towerCredentialsId, boolean towerTrustCert) {
@@ -39,25 +74,294 @@ public class TowerInstallation extends AbstractDescribableImpl<TowerInstallation
     public String getTowerURL() { return this.towerURL; }
     public String getTowerCredentialsId() { return this.towerCredentialsId; }
     public boolean getTowerTrustCert() { return this.towerTrustCert; }
+    public String getTowerNodeURLs() { return this.towerNodeURLs; }
+    // Configurations saved before these existed will load as 0, the pool turns that into its defaults
+    public int getTowerMaxConnections() { return this.towerMaxConnections; }
+    public int getTowerIdleTimeout() { return this.towerIdleTimeout; }
+    public int getTowerPollMinInterval() { return this.towerPollMinInterval; }
+    public int getTowerPollMaxInterval() { return this.towerPollMaxInterval; }
+    public int getTowerConnectTimeout() { return this.towerConnectTimeout; }
+    public int getTowerSocketTimeout() { return this.towerSocketTimeout; }
+    public int getTowerLeaseTimeout() { return this.towerLeaseTimeout; }
+    public boolean getTowerPushEvents() { return this.towerPushEvents; }
+    public boolean getTowerCompression() { return this.towerCompression; }
+    public boolean getTowerFailWhenDown() { return this.towerFailWhenDown; }
+    public int getTowerMaxConcurrentJobs() { return this.towerMaxConcurrentJobs; }
+    public int getTowerRequestsPerSecond() { return this.towerRequestsPerSecond; }
+    public int getTowerMaxInFlight() { return this.towerMaxInFlight; }
+
+    @DataBoundSetter
+    public void setTowerNodeURLs(String towerNodeURLs) { this.towerNodeURLs = towerNodeURLs; }
+    @DataBoundSetter
+    public void setTowerMaxConnections(int towerMaxConnections) { this.towerMaxConnections = towerMaxConnections; }
+    @DataBoundSetter
+    public void setTowerIdleTimeout(int towerIdleTimeout) { this.towerIdleTimeout = towerIdleTimeout; }
+    @DataBoundSetter
+    public void setTowerPollMinInterval(int towerPollMinInterval) { this.towerPollMinInterval = towerPollMinInterval; }
+    @DataBoundSetter
+    public void setTowerPollMaxInterval(int towerPollMaxInterval) { this.towerPollMaxInterval = towerPollMaxInterval; }
+    @DataBoundSetter
+    public void setTowerConnectTimeout(int towerConnectTimeout) { this.towerConnectTimeout = towerConnectTimeout; }
+    @DataBoundSetter
+    public void setTowerSocketTimeout(int towerSocketTimeout) { this.towerSocketTimeout = towerSocketTimeout; }
+    @DataBoundSetter
+    public void setTowerLeaseTimeout(int towerLeaseTimeout) { this.towerLeaseTimeout = towerLeaseTimeout; }
+    @DataBoundSetter
+    public void setTowerFailWhenDown(boolean towerFailWhenDown) { this.towerFailWhenDown = towerFailWhenDown; }
+    @DataBoundSetter
+    public void setTowerPushEvents(boolean towerPushEvents) { this.towerPushEvents = towerPushEvents; }
+    @DataBoundSetter
+    public void setTowerCompression(boolean towerCompression) { this.towerCompression = towerCompression; }
+    @DataBoundSetter
+    public void setTowerMaxConcurrentJobs(int towerMaxConcurrentJobs) { this.towerMaxConcurrentJobs = towerMaxConcurrentJobs; }
+    @DataBoundSetter
+    public void setTowerRequestsPerSecond(int towerRequestsPerSecond) { this.towerRequestsPerSecond = towerRequestsPerSecond; }
+    @DataBoundSetter
+    public void setTowerMaxInFlight(int towerMaxInFlight) { this.towerMaxInFlight = towerMaxInFlight; }
+
+    public TowerPollingPolicy getPollingPolicy() {
+        return new TowerPollingPolicy(this.towerPollMinInterval, this.towerPollMaxInterval);
+    }
+
+    public synchronized TowerConnectionPool getConnectionPool() throws AnsibleTowerException {
+        if(connectionPool == null) {
+            connectionPool = new TowerConnectionPool(
+                    this.towerTrustCert, this.towerMaxConnections, this.towerIdleTimeout,
+                    this.towerConnectTimeout, this.towerSocketTimeout, this.towerLeaseTimeout
+            );
+        }
+        return connectionPool;
+    }
+
+    public synchronized TowerJobPoller getJobPoller() {
+        if(jobPoller == null) { jobPoller = new TowerJobPoller(this); }
+        return jobPoller;
+    }
+
+    public synchronized TowerNameCache getNameCache() {
+        if(nameCache == null) { nameCache = new TowerNameCache(); }
+        return nameCache;
+    }
+
+    public synchronized TowerLaunchLimiter getLaunchLimiter() {
+        if(launchLimiter == null) { launchLimiter = new TowerLaunchLimiter(this.towerMaxConcurrentJobs); }
+        return launchLimiter;
+    }
+
+    public synchronized TowerRequestLimiter getRequestLimiter() {
+        if(requestLimiter == null) { requestLimiter = new TowerRequestLimiter(this.towerRequestsPerSecond, this.towerMaxInFlight); }
+        return requestLimiter;
+    }
+
+    // Every blocking call builds make to Tower runs here, the Jenkins timer is only used to schedule them.
+    // There is no point in more threads than requests the limiter lets through at once, the rest would just wait on it.
+    public synchronized ExecutorService getExecutor() {
+        if(executor == null) {
+            int threads = getExecutorThreads();
+            executor = new ThreadPoolExecutor(
+                    threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Ansible Tower I/O ("+ this.towerDisplayName +")"),
+                    // The queue is unbounded so work is only turned away once the installation was removed,
+                    // builds still winding down on it finish that work on their own thread
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) { task.run(); }
+                    }
+            );
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private int getExecutorThreads() {
+        return this.towerMaxInFlight > 0 ? this.towerMaxInFlight : TowerRequestLimiter.DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    public synchronized TowerCircuitBreaker getCircuitBreaker() {
+        if(circuitBreaker == null) { circuitBreaker = new TowerCircuitBreaker(); }
+        return circuitBreaker;
+    }
+
+    // The main URL plus any other API nodes of a clustered Tower, one per line
+    public List<String> getNodeURLs() {
+        List<String> urls = new ArrayList<String>();
+        urls.add(this.towerURL);
+        if(this.towerNodeURLs != null) {
+            for(String nodeURL : this.towerNodeURLs.split("[\\s,]+")) {
+                if(!nodeURL.isEmpty() && !urls.contains(nodeURL)) { urls.add(nodeURL); }
+            }
+        }
+        return urls;
+    }
 
-    public TowerConnector getTowerConnector() {
-        return TowerInstallation.getTowerConnecorStatic(this.towerURL, this.towerCredentialsId, this.towerTrustCert);
+    // Only a cluster needs balancing, a single node installation gets null
+    public synchronized TowerNodeBalancer getNodeBalancer() {
+        List<String> urls = getNodeURLs();
+        if(urls.size() < 2) { return null; }
+        if(nodeBalancer == null) { nodeBalancer = new TowerNodeBalancer(urls); }
+        return nodeBalancer;
     }
 
-    public static TowerConnector getTowerConnecorStatic(String towerURL, String towerCredentialsId, boolean trustCert) {
-        String username = null;
-        String password = null;
-        if(StringUtils.isNotBlank(towerCredentialsId)) {
-            List<StandardUsernamePasswordCredentials> credsList = CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class);
-            for(StandardUsernamePasswordCredentials creds : credsList) {
-                if(creds.getId().equals(towerCredentialsId)) {
-                    username = creds.getUsername();
-                    password = creds.getPassword().getPlainText();
-                }
+    public synchronized TowerTokenCache getTokenCache() {
+        if(tokenCache == null) { tokenCache = new TowerTokenCache(); }
+        return tokenCache;
+    }
+
+    public synchronized TowerValidatorCache getValidatorCache() {
+        if(validatorCache == null) { validatorCache = new TowerValidatorCache(); }
+        return validatorCache;
+    }
+
+    public synchronized TowerTrafficStats getTrafficStats() {
+        if(trafficStats == null) { trafficStats = new TowerTrafficStats(); }
+        return trafficStats;
+    }
+
+    public synchronized TowerHealth getHealth() {
+        if(health == null) { health = new TowerHealth(getNodeURLs()); }
+        return health;
+    }
+
+    // Called by the health monitor after each round of checks, nodes it found down are kept out of the balancer
+    // until the next round (plus a little slack so a slow round doesn't let them back in early)
+    public void applyHealth() {
+        TowerNodeBalancer balancer = getNodeBalancer();
+        if(balancer == null) { return; }
+        long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(45);
+        for(TowerHealth.NodeHealth node : getHealth().getNodes()) {
+            if(node.isUp()) {
+                balancer.markUp(node.getURL());
+            } else {
+                balancer.markDown(node.getURL(), until);
+            }
+        }
+    }
+
+    // When the global config is saved every installation is rebuilt from the form.
+    // If nothing about the connection changed we keep the existing pool (and its open connections).
+    // Otherwise the old pool is retired, builds still holding it move over to ours and it shuts down once drained.
+    public synchronized void adoptSharedState(TowerInstallation previous) {
+        TowerConnectionPool previousPool;
+        TowerRequestLimiter previousLimiter;
+        TowerNodeBalancer previousBalancer;
+        TowerHealth previousHealth;
+        ThreadPoolExecutor previousExecutor;
+        TowerLaunchLimiter previousLaunchLimiter;
+        TowerJobPoller previousPoller;
+        synchronized (previous) {
+            previousHealth = previous.health;
+            previousExecutor = previous.executor;
+            previousLaunchLimiter = previous.launchLimiter;
+            previousPoller = previous.jobPoller;
+            // Same URL so the token is still good, it is checked against the credentials each time it is used
+            tokenCache = previous.tokenCache;
+            validatorCache = previous.validatorCache;
+            trafficStats = previous.trafficStats;
+            previousBalancer = previous.nodeBalancer;
+            previousPool = previous.connectionPool;
+            previousLimiter = previous.requestLimiter;
+            // Same URL, so whatever the breaker knows about Tower's health still holds
+            circuitBreaker = previous.circuitBreaker;
+        }
+        if(previousPool != null && previousPool.isCompatible(
+                this.towerTrustCert, this.towerMaxConnections, this.towerIdleTimeout,
+                this.towerConnectTimeout, this.towerSocketTimeout, this.towerLeaseTimeout
+        )) {
+            connectionPool = previousPool;
+        } else if(previousPool != null) {
+            TowerConnectionPool successor;
+            try {
+                successor = getConnectionPool();
+            } catch(AnsibleTowerException e) {
+                // Our pool can't be created right now (getTowerConnector will say why), the old one still shuts down once drained
+                successor = null;
             }
+            previousPool.retire(successor);
         }
-        TowerLogger.writeMessage("Creating a test connector with "+ username +"@"+ towerURL);
-        TowerConnector testConnector = new TowerConnector(towerURL, username, password, trustCert);
+        // Keep what we know about the health of each node if the cluster is still made up of the same nodes
+        if(previousBalancer != null && previousBalancer.isCompatible(getNodeURLs())) {
+            nodeBalancer = previousBalancer;
+        }
+        if(previousHealth != null && previousHealth.isCompatible(getNodeURLs())) {
+            health = previousHealth;
+        } else if(previousHealth != null) {
+            previousHealth.shutdown();
+        }
+        // Same for the limiter, handing out a fresh one would let a burst through twice the configured limits
+        if(previousLimiter != null && previousLimiter.isCompatible(this.towerRequestsPerSecond, this.towerMaxInFlight)) {
+            requestLimiter = previousLimiter;
+        }
+        // Running fan outs hold permits from the old limiter, a fresh one would let in another full set of jobs
+        if(previousLaunchLimiter != null && previousLaunchLimiter.isCompatible(this.towerMaxConcurrentJobs)) {
+            launchLimiter = previousLaunchLimiter;
+        }
+        // Builds are waiting on the poller for their job status, it carries on with our settings from here
+        if(previousPoller != null) {
+            previousPoller.setInstallation(this);
+            jobPoller = previousPoller;
+        }
+        // The executor has work queued for running builds so it always carries over, only its size follows the config
+        if(previousExecutor != null) {
+            int threads = getExecutorThreads();
+            if(threads > previousExecutor.getMaximumPoolSize()) {
+                previousExecutor.setMaximumPoolSize(threads);
+                previousExecutor.setCorePoolSize(threads);
+            } else {
+                previousExecutor.setCorePoolSize(threads);
+                previousExecutor.setMaximumPoolSize(threads);
+            }
+            executor = previousExecutor;
+        }
+    }
+
+    // The installation was removed from the global config and nothing adopted its state.
+    // Builds still waiting on it fail rather than wait forever, the pool shuts down once they let go of it.
+    public void shutdown() {
+        TowerConnectionPool pool;
+        TowerJobPoller poller;
+        TowerLaunchLimiter limiter;
+        TowerHealth monitor;
+        ThreadPoolExecutor pendingWork;
+        synchronized (this) {
+            pool = connectionPool;
+            poller = jobPoller;
+            limiter = launchLimiter;
+            monitor = health;
+            pendingWork = executor;
+        }
+        AnsibleTowerException removed = new AnsibleTowerException("The Tower installation "+ this.towerDisplayName +" was removed");
+        if(poller != null) { poller.shutdown(removed); }
+        if(limiter != null) { limiter.shutdown(removed); }
+        // Lets the builds failed above hear about it, anything they queue after this runs on their own thread
+        if(pendingWork != null) { pendingWork.shutdown(); }
+        if(monitor != null) { monitor.shutdown(); }
+        if(pool != null) { pool.retire(null); }
+    }
+
+    public TowerConnector getTowerConnector() throws AnsibleTowerException {
+        // Connectors hold a build's place in the job output so each build gets its own,
+        // everything expensive behind them (credentials, pool, token, limiters) belongs to the installation
+        TowerCredentialsCache.Entry credentials = TowerCredentialsCache.get(this.towerCredentialsId);
+        TowerConnector connector = new TowerConnector(
+                this.towerURL, credentials.getUsername(), credentials.getPassword(), getConnectionPool()
+        );
+        connector.setCredentialsFingerprint(credentials.getFingerprint());
+        connector.setNameCache(getNameCache());
+        connector.setRequestLimiter(getRequestLimiter());
+        connector.setCircuitBreaker(getCircuitBreaker());
+        connector.setTokenCache(getTokenCache());
+        connector.setValidatorCache(getValidatorCache());
+        connector.setCompression(this.towerCompression);
+        connector.setTrafficStats(getTrafficStats());
+        TowerNodeBalancer balancer = getNodeBalancer();
+        if(balancer != null) { connector.setNodeBalancer(balancer); }
+        return connector;
+    }
+
+    public static TowerConnector getTowerConnecorStatic(String towerURL, String towerCredentialsId, boolean trustCert) throws AnsibleTowerException {
+        TowerCredentialsCache.Entry credentials = TowerCredentialsCache.get(towerCredentialsId);
+        TowerLogger.writeMessage("Creating a test connector with "+ credentials.getUsername() +"@"+ towerURL);
+        TowerConnector testConnector = new TowerConnector(towerURL, credentials.getUsername(), credentials.getPassword(), trustCert);
         return testConnector;
     }
 
@@ -70,12 +374,15 @@ public class TowerInstallation extends AbstractDescribableImpl<TowerInstallation
                 @QueryParameter("towerTrustCert") final boolean towerTrustCert
         ) {
             TowerLogger.writeMessage("Starting to test connection with ("+ towerURL +") and ("+ towerCredentialsId +") and ("+ towerTrustCert +")");
-            TowerConnector testConnector = TowerInstallation.getTowerConnecorStatic(towerURL, towerCredentialsId, towerTrustCert);
+            TowerConnector testConnector = null;
             try {
+                testConnector = TowerInstallation.getTowerConnecorStatic(towerURL, towerCredentialsId, towerTrustCert);
                 testConnector.testConnection();
                 return FormValidation.ok("Success");
             } catch(Exception e) {
                 return FormValidation.error(e.getMessage());
+            } finally {
+                if(testConnector != null) { testConnector.close(); }
             }
         }
 
@@ -0,0 +1,167 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import jenkins.plugins.ansible_tower.AnsibleTowerItemDoesNotExist;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One poller per Tower installation that answers "what is the status of job X" for every build at once.
+ * Builds ask for the status of their job at some point in the future, requests that come due together are
+ * folded into a handful of id__in listing queries and the results are handed back through futures.
+ * The Jenkins timer only wakes the poller up, the queries themselves run on the installation's executor.
+ */
+public class TowerJobPoller {
+    // How many job ids we put into a single listing query, this keeps the URL to a sane length
+    private static final int BATCH_SIZE = 50;
+    // Requests due within this many milliseconds of a tick ride along with it
+    private static final long BATCH_WINDOW = 500;
+
+    // Swapped for the new installation when the global config is saved, builds waiting on us carry on polling
+    private volatile TowerInstallation installation;
+    private final List<StatusRequest> pending = new ArrayList<StatusRequest>();
+    private ScheduledFuture<?> nextTick = null;
+    private long nextTickTime = Long.MAX_VALUE;
+    // Set once the installation was removed, see shutdown()
+    private AnsibleTowerException shutdownReason = null;
+
+    public TowerJobPoller(TowerInstallation installation) {
+        this.installation = installation;
+    }
+
+    public void setInstallation(TowerInstallation installation) {
+        this.installation = installation;
+    }
+
+    public CompletableFuture<JobStatus> requestStatus(int jobID, long delay) {
+        StatusRequest request = new StatusRequest(jobID, System.currentTimeMillis() + Math.max(0, delay));
+        synchronized (this) {
+            if(shutdownReason != null) {
+                request.future.completeExceptionally(shutdownReason);
+                return request.future;
+            }
+            pending.add(request);
+            scheduleTick(request.dueTime);
+        }
+        return request.future;
+    }
+
+    // The installation was removed from the global config, builds still waiting on a status are told so instead of waiting forever
+    public void shutdown(AnsibleTowerException reason) {
+        List<StatusRequest> dropped;
+        synchronized (this) {
+            shutdownReason = reason;
+            if(nextTick != null) { nextTick.cancel(false); }
+            nextTick = null;
+            nextTickTime = Long.MAX_VALUE;
+            dropped = new ArrayList<StatusRequest>(pending);
+            pending.clear();
+        }
+        for(StatusRequest request : dropped) {
+            request.future.completeExceptionally(reason);
+        }
+    }
+
+    public synchronized boolean isShutdown() { return shutdownReason != null; }
+
+    private synchronized void scheduleTick(long dueTime) {
+        if(shutdownReason != null) { return; }
+        if(nextTick != null && nextTickTime <= dueTime) { return; }
+        if(nextTick != null) { nextTick.cancel(false); }
+        nextTickTime = dueTime;
+        nextTick = Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() { tick(); }
+        }, Math.max(0, dueTime - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        List<StatusRequest> due = new ArrayList<StatusRequest>();
+        synchronized (this) {
+            nextTick = null;
+            nextTickTime = Long.MAX_VALUE;
+            long cutOff = System.currentTimeMillis() + BATCH_WINDOW;
+            long nextDue = Long.MAX_VALUE;
+            for(Iterator<StatusRequest> it = pending.iterator(); it.hasNext(); ) {
+                StatusRequest request = it.next();
+                if(request.future.isDone()) {
+                    // The build gave up on this one (aborted or stopped)
+                    it.remove();
+                } else if(request.dueTime <= cutOff) {
+                    due.add(request);
+                    it.remove();
+                } else {
+                    nextDue = Math.min(nextDue, request.dueTime);
+                }
+            }
+            if(nextDue != Long.MAX_VALUE) { scheduleTick(nextDue); }
+        }
+
+        Set<Integer> jobIDs = new LinkedHashSet<Integer>();
+        for(StatusRequest request : due) { jobIDs.add(request.jobID); }
+
+        List<Integer> batch = new ArrayList<Integer>();
+        for(Integer jobID : jobIDs) {
+            batch.add(jobID);
+            if(batch.size() == BATCH_SIZE) {
+                submitFetch(batch, due);
+                batch = new ArrayList<Integer>();
+            }
+        }
+        if(!batch.isEmpty()) { submitFetch(batch, due); }
+    }
+
+    private void submitFetch(final List<Integer> jobIDs, final List<StatusRequest> requests) {
+        final TowerInstallation current = installation;
+        current.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() { fetch(current, jobIDs, requests); }
+        });
+    }
+
+    private void fetch(TowerInstallation current, List<Integer> jobIDs, List<StatusRequest> requests) {
+        Map<Integer, JobStatus> statuses = null;
+        AnsibleTowerException failure = null;
+        try {
+            // A connector per query so changes to the credentials or the connection settings are picked up,
+            // everything costly behind it is shared through the installation
+            statuses = current.getTowerConnector().getJobStatuses(jobIDs);
+        } catch(AnsibleTowerException e) {
+            failure = e;
+        } catch(RuntimeException e) {
+            // Nobody would see this otherwise and the builds would wait on their futures forever
+            failure = new AnsibleTowerException("Unable to get the status of jobs "+ jobIDs +": "+ e.getMessage());
+        }
+
+        for(StatusRequest request : requests) {
+            if(!jobIDs.contains(request.jobID)) { continue; }
+            if(failure != null) {
+                request.future.completeExceptionally(failure);
+            } else if(statuses.containsKey(request.jobID)) {
+                request.future.complete(statuses.get(request.jobID));
+            } else {
+                request.future.completeExceptionally(new AnsibleTowerItemDoesNotExist("The job id "+ request.jobID +" does not exist"));
+            }
+        }
+    }
+
+    private static class StatusRequest {
+        private final int jobID;
+        private final long dueTime;
+        private final CompletableFuture<JobStatus> future = new CompletableFuture<JobStatus>();
+
+        private StatusRequest(int jobID, long dueTime) {
+            this.jobID = jobID;
+            this.dueTime = dueTime;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import jenkins.plugins.ansible_tower.AnsibleTowerItemDoesNotExist;
+import jenkins.util.Timer;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Follows a single launched Tower job.
+ * The job status comes from the installation's shared poller, the tracker asks for the next status and handles it
+ * when it arrives (import new output, decide when to ask again) so it can be driven by a blocking loop or by callbacks.
+ * If an event stream is started, events are printed as Tower pushes them and polling only runs as a safety net.
+ */
+public class TowerJobTracker {
+    // How long we keep trying while Tower can't tell us about the job before we give up on it
+    private static final long MAX_OUTAGE = TimeUnit.MINUTES.toMillis(5);
+
+    private final TowerConnector connector;
+    private final TowerJobPoller poller;
+    private final int jobID;
+    private final TowerPollingPolicy pollingPolicy;
+    private final boolean importTowerLogs;
+    private final boolean importFromStdout;
+    private final boolean removeColor;
+    private JobStatus jobStatus = null;
+    private TowerEventStream eventStream = null;
+    private volatile boolean streaming = false;
+    private CompletableFuture<JobStatus> pendingStatus = null;
+    private long failingSince = -1;
+    // When the last stdout import triggered by pushed events was (or is scheduled to be) asked for
+    private final AtomicLong lastStdoutWakeUp = new AtomicLong();
+
+    public TowerJobTracker(
+            TowerConnector connector, TowerJobPoller poller, int jobID, TowerPollingPolicy pollingPolicy,
+            boolean importTowerLogs, boolean importFromStdout, boolean removeColor
+    ) {
+        this.connector = connector;
+        this.poller = poller;
+        this.jobID = jobID;
+        this.pollingPolicy = pollingPolicy;
+        this.importTowerLogs = importTowerLogs;
+        this.importFromStdout = importFromStdout;
+        this.removeColor = removeColor;
+    }
+
+    public int getJobID() { return jobID; }
+    public JobStatus getJobStatus() { return jobStatus; }
+    public boolean isStreaming() { return streaming; }
+    public TowerEventWindow getSeenEvents() { return connector.getSeenEvents(); }
+    public int getStdoutLine() { return connector.getStdoutLine(); }
+
+    // Subscribes to Tower's websocket for this job, if it can't be opened the caller just keeps polling
+    public void startEventStream(final PrintStream jenkinsLogger) throws AnsibleTowerException {
+        // One writer (and its buffer) for every event pushed over the stream rather than one per event
+        final TowerLogWriter pushedLogWriter = new TowerLogWriter(jenkinsLogger, removeColor);
+        TowerEventStream.Listener listener = new TowerEventStream.Listener() {
+            @Override
+            public void onJobEvent(int counter, String stdout) {
+                // Stdout imports read the whole job output, pushed events are only used to know when to look
+                if(importTowerLogs && !importFromStdout) {
+                    connector.logPushedEvent(counter, stdout, pushedLogWriter);
+                } else if(importTowerLogs) {
+                    wakeUpForStdout();
+                }
+            }
+
+            @Override
+            public void onJobFinished(String status) { wakeUp(); }
+
+            @Override
+            public void onStreamClosed(String reason) {
+                // Polling takes over from here, ask straight away so nothing pushed during the hand over is lost
+                if(streaming) {
+                    streaming = false;
+                    wakeUp();
+                }
+            }
+        };
+        synchronized (this) {
+            streaming = true;
+            eventStream = connector.openEventStream(jobID, listener);
+        }
+    }
+
+    public CompletableFuture<JobStatus> nextStatus(long delay) {
+        // While Tower pushes to us the status poll is only there in case the stream misses the end of the job
+        if(streaming) { delay = Math.max(delay, pollingPolicy.getMaxInterval()); }
+        final CompletableFuture<JobStatus> status = new CompletableFuture<JobStatus>();
+        synchronized (this) {
+            pendingStatus = status;
+        }
+        forward(poller.requestStatus(jobID, delay), status);
+        return status;
+    }
+
+    // Asks for the status right away instead of waiting for the scheduled poll
+    private void wakeUp() {
+        CompletableFuture<JobStatus> status;
+        synchronized (this) {
+            status = pendingStatus;
+        }
+        if(status == null || status.isDone()) { return; }
+        forward(poller.requestStatus(jobID, 0), status);
+    }
+
+    // Ansible can push hundreds of events a second and each stdout import reads everything new,
+    // so a burst gets one import straight away and at most one more every minimum poll interval
+    private void wakeUpForStdout() {
+        long now = System.currentTimeMillis();
+        while(true) {
+            long last = lastStdoutWakeUp.get();
+            // Already scheduled, that import will pick this event up
+            if(last > now) { return; }
+            long at = Math.max(now, last + pollingPolicy.getMinInterval());
+            if(lastStdoutWakeUp.compareAndSet(last, at)) {
+                if(at == now) {
+                    wakeUp();
+                } else {
+                    Timer.get().schedule(new Runnable() {
+                        @Override
+                        public void run() { wakeUp(); }
+                    }, at - now, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void forward(final CompletableFuture<JobStatus> request, final CompletableFuture<JobStatus> status) {
+        request.whenComplete((result, error) -> {
+            if(error != null) {
+                status.completeExceptionally(error);
+            } else {
+                status.complete(result);
+            }
+        });
+        // Cancelling our future lets the poller drop the request it is holding for us
+        status.whenComplete((result, error) -> request.cancel(false));
+    }
+
+    // Returns the number of milliseconds to wait before asking for the status again or -1 once the job has finished
+    public synchronized long handleStatus(JobStatus newStatus, PrintStream jenkinsLogger) throws AnsibleTowerException {
+        String previousStatus = jobStatus == null ? null : jobStatus.getStatus();
+        jobStatus = newStatus;
+        failingSince = -1;
+
+        // The status was taken before we fetch events so once it says finished this pass picks up everything.
+        // While streaming the events have already been printed, the finished pass still catches any the stream dropped.
+        int newEvents = 0;
+        if(!streaming || jobStatus.isFinished() || (importTowerLogs && importFromStdout)) {
+            newEvents = logEvents(jenkinsLogger);
+        }
+        if(jobStatus.isFinished()) {
+            close();
+            return -1;
+        }
+
+        boolean sawActivity = newEvents > 0 || !jobStatus.getStatus().equals(previousStatus);
+        return pollingPolicy.nextDelay(sawActivity);
+    }
+
+    // Called when a status (or the output import that goes with it) failed.
+    // A blip on Tower's side shouldn't fail the build so we keep polling for a while, the output cursor
+    // has not moved so nothing is lost. Returns the delay before the next poll or -1 to give up.
+    public synchronized long handleError(Throwable error, PrintStream jenkinsLogger) {
+        if((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        // Tower answered, the job is gone
+        if(error instanceof AnsibleTowerItemDoesNotExist) { return -1; }
+        // The installation was removed, there is nobody left to ask
+        if(poller.isShutdown()) { return -1; }
+
+        long now = System.currentTimeMillis();
+        if(failingSince == -1) { failingSince = now; }
+        if(now - failingSince >= MAX_OUTAGE) { return -1; }
+        jenkinsLogger.println("WARNING: Unable to get the job status from Tower, trying again: "+ error.getMessage());
+        return pollingPolicy.nextDelay(false);
+    }
+
+    public synchronized void close() {
+        streaming = false;
+        if(eventStream != null) {
+            eventStream.close();
+            eventStream = null;
+        }
+    }
+
+    private int logEvents(PrintStream jenkinsLogger) throws AnsibleTowerException {
+        if(!importTowerLogs) { return 0; }
+        try {
+            if(importFromStdout) {
+                return connector.logJobStdout(jobID, jenkinsLogger, removeColor, jobStatus.isFinished());
+            }
+            return connector.logJobEvents(jobID, jenkinsLogger, removeColor);
+        } catch(AnsibleTowerException e) {
+            throw new AnsibleTowerException("Failed to get job events from tower: "+ e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Pull parsing for the handful of Tower responses we care about.
+ * Rather than building a full JSON tree for every response we walk the tokens once,
+ * keep the fields we need and skip over everything else (related links, summary_fields, event_data, ...).
+ */
+public class TowerJsonReader {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    public interface EventHandler {
+        // Events are identified by their counter, the job's own numbering of its events.
+        // Returns where the event's stdout should be written or null to skip the event
+        Writer startEvent(int counter) throws IOException;
+        // endLine is where the event's output ends in the job's stdout (exclusive), -1 if Tower didn't say
+        void endEvent(int counter, int endLine) throws IOException;
+    }
+
+    // Reads a single job, as returned by /api/v1/jobs/{id}/
+    public static JobStatus readJobStatus(InputStream content) throws IOException, AnsibleTowerException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            return readJobStatus(parser);
+        }
+    }
+
+    // Reads a page of /api/v1/jobs/ into statuses and returns the next page (or null)
+    public static String readJobStatuses(InputStream content, Map<Integer, JobStatus> statuses) throws IOException, AnsibleTowerException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            String next = null;
+            boolean sawResults = false;
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("next")) {
+                    next = readNullableString(parser, value);
+                } else if(field.equals("results")) {
+                    sawResults = true;
+                    expect(value, JsonToken.START_ARRAY);
+                    while(parser.nextToken() == JsonToken.START_OBJECT) {
+                        JobStatus status = readJobStatus(parser);
+                        statuses.put(status.getJobID(), status);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if(!sawResults) { throw new AnsibleTowerException("Response for jobs does not contain results"); }
+            return next;
+        }
+    }
+
+    // Reads a page of job events streaming each event's stdout to the handler, returns the next page (or null)
+    public static String readJobEvents(InputStream content, EventHandler handler) throws IOException, AnsibleTowerException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            String next = null;
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("next")) {
+                    next = readNullableString(parser, value);
+                } else if(field.equals("results")) {
+                    expect(value, JsonToken.START_ARRAY);
+                    while(parser.nextToken() == JsonToken.START_OBJECT) {
+                        int counter = -1;
+                        int endLine = -1;
+                        boolean started = false;
+                        Writer out = null;
+                        String bufferedStdout = null;
+                        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String eventField = parser.getCurrentName();
+                            JsonToken eventValue = parser.nextToken();
+                            if(eventField.equals("counter") && eventValue == JsonToken.VALUE_NUMBER_INT) {
+                                counter = parser.getIntValue();
+                            } else if(eventField.equals("end_line") && eventValue == JsonToken.VALUE_NUMBER_INT) {
+                                endLine = parser.getIntValue();
+                            } else if(eventField.equals("stdout") && eventValue != JsonToken.VALUE_NULL) {
+                                if(counter != -1) {
+                                    // Tower puts the counter first so normally we can write stdout straight out of the parser
+                                    started = true;
+                                    out = handler.startEvent(counter);
+                                    if(out != null) { parser.getText(out); }
+                                } else {
+                                    bufferedStdout = parser.getText();
+                                }
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        if(counter == -1) { throw new AnsibleTowerException("Job event did not contain a counter"); }
+                        if(!started) {
+                            out = handler.startEvent(counter);
+                            if(out != null && bufferedStdout != null) { out.write(bufferedStdout); }
+                        }
+                        if(out != null) { handler.endEvent(counter, endLine); }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return next;
+        }
+    }
+
+    // Collects the ids of every result on a listing page that is named exactly name, returns the next page (or null)
+    public static String readNamedIDs(InputStream content, String name, List<Integer> matches) throws IOException, AnsibleTowerException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            String next = null;
+            boolean sawResults = false;
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("next")) {
+                    next = readNullableString(parser, value);
+                } else if(field.equals("results")) {
+                    sawResults = true;
+                    expect(value, JsonToken.START_ARRAY);
+                    while(parser.nextToken() == JsonToken.START_OBJECT) {
+                        int id = -1;
+                        String itemName = null;
+                        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String itemField = parser.getCurrentName();
+                            JsonToken itemValue = parser.nextToken();
+                            if(itemField.equals("id")) {
+                                id = parser.getIntValue();
+                            } else if(itemField.equals("name")) {
+                                itemName = readNullableString(parser, itemValue);
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                        if(name.equals(itemName)) { matches.add(id); }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if(!sawResults) { throw new AnsibleTowerException("Response for templates does not contain results"); }
+            return next;
+        }
+    }
+
+    // Streams the content of a /api/v1/jobs/{id}/stdout/?format=json response into out
+    public static void readStdoutContent(InputStream content, Writer out) throws IOException, AnsibleTowerException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("content") && value != JsonToken.VALUE_NULL) {
+                    parser.getText(out);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    // A message pushed over Tower's websocket, only the fields we act on are kept
+    public static class StreamMessage {
+        public boolean accept = false;
+        public String groupName = null;
+        public int unifiedJobID = -1;
+        public String status = null;
+        public int counter = -1;
+        public int job = -1;
+        public String stdout = null;
+    }
+
+    public static StreamMessage readStreamMessage(String message) throws IOException, AnsibleTowerException {
+        StreamMessage streamMessage = new StreamMessage();
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("accept")) {
+                    streamMessage.accept = value == JsonToken.VALUE_TRUE;
+                } else if(field.equals("group_name")) {
+                    streamMessage.groupName = readNullableString(parser, value);
+                } else if(field.equals("unified_job_id") && value == JsonToken.VALUE_NUMBER_INT) {
+                    streamMessage.unifiedJobID = parser.getIntValue();
+                } else if(field.equals("status")) {
+                    streamMessage.status = readNullableString(parser, value);
+                } else if(field.equals("counter") && value == JsonToken.VALUE_NUMBER_INT) {
+                    streamMessage.counter = parser.getIntValue();
+                } else if(field.equals("job") && value == JsonToken.VALUE_NUMBER_INT) {
+                    streamMessage.job = parser.getIntValue();
+                } else if(field.equals("stdout")) {
+                    streamMessage.stdout = readNullableString(parser, value);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return streamMessage;
+    }
+
+    // The token handed back by /api/v1/authtoken/, expires is left as Tower's ISO 8601 timestamp
+    public static class AuthToken {
+        public String token = null;
+        public String expires = null;
+    }
+
+    public static AuthToken readAuthToken(InputStream content) throws IOException, AnsibleTowerException {
+        AuthToken authToken = new AuthToken();
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("token")) {
+                    authToken.token = readNullableString(parser, value);
+                } else if(field.equals("expires")) {
+                    authToken.expires = readNullableString(parser, value);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if(authToken.token == null) { throw new AnsibleTowerException("Did not get a token from the request"); }
+        return authToken;
+    }
+
+    // Pulls the top level id out of an object, such as the job returned by a launch
+    public static int readID(InputStream content) throws IOException, AnsibleTowerException {
+        try (JsonParser parser = jsonFactory.createParser(content)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if(field.equals("id") && value == JsonToken.VALUE_NUMBER_INT) {
+                    return parser.getIntValue();
+                }
+                parser.skipChildren();
+            }
+            throw new AnsibleTowerException("Did not get a job ID from the request");
+        }
+    }
+
+    // The parser must be sitting on the START_OBJECT of a job, it is left on the matching END_OBJECT
+    private static JobStatus readJobStatus(JsonParser parser) throws IOException, AnsibleTowerException {
+        int id = -1;
+        String status = "unknown";
+        Boolean finished = null;
+        Boolean failed = null;
+        double elapsed = 0;
+        while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if(field.equals("id")) {
+                id = parser.getIntValue();
+            } else if(field.equals("status")) {
+                status = parser.getText();
+            } else if(field.equals("finished")) {
+                finished = value != JsonToken.VALUE_NULL;
+            } else if(field.equals("failed")) {
+                failed = parser.getBooleanValue();
+            } else if(field.equals("elapsed")) {
+                elapsed = parser.getValueAsDouble();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if(finished == null || failed == null) {
+            throw new AnsibleTowerException("Did not get a finished and failed status from the request");
+        }
+        return new JobStatus(id, status, finished, failed, elapsed);
+    }
+
+    private static String readNullableString(JsonParser parser, JsonToken value) throws IOException {
+        if(value == JsonToken.VALUE_NULL) { return null; }
+        return parser.getText();
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws AnsibleTowerException {
+        if(actual != expected) {
+            throw new AnsibleTowerException("Unexpected response from Tower, expected "+ expected +" but got "+ actual);
+        }
+    }
+}
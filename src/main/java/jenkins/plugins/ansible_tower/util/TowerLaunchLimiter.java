@@ -0,0 +1,83 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Caps how many fanned out jobs run on a Tower installation at once.
+ * A permit is handed out through a future so a job waiting for its turn doesn't hold a thread,
+ * waiting jobs are let in first come first served as running ones finish.
+ */
+public class TowerLaunchLimiter {
+    public static final int DEFAULT_MAX_CONCURRENT_JOBS = 10;
+
+    private final int maxConcurrentJobs;
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<CompletableFuture<Void>>();
+    private int running = 0;
+
+    public TowerLaunchLimiter(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs > 0 ? maxConcurrentJobs : DEFAULT_MAX_CONCURRENT_JOBS;
+    }
+
+    public int getMaxConcurrentJobs() { return maxConcurrentJobs; }
+
+    public boolean isCompatible(int maxConcurrentJobs) {
+        return this.maxConcurrentJobs == (maxConcurrentJobs > 0 ? maxConcurrentJobs : DEFAULT_MAX_CONCURRENT_JOBS);
+    }
+    public synchronized int getRunning() { return running; }
+    public synchronized int getWaiting() { return waiting.size(); }
+
+    public synchronized CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> permit = newPermit();
+        if(running < maxConcurrentJobs) {
+            running++;
+            permit.complete(null);
+        } else {
+            waiting.add(permit);
+        }
+        return permit;
+    }
+
+    // Takes a permit even if we are at the cap, used for jobs that were already running before a restart
+    public synchronized void forceAcquire() {
+        running++;
+    }
+
+    public void release() {
+        while(true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiting.poll();
+                if(next == null) {
+                    running = Math.max(0, running - 1);
+                    return;
+                }
+            }
+            // The permit moves straight to the next job, complete it outside the lock since it runs the launch.
+            // A waiter that gave up (the build was aborted) cancelled its future, possibly just now, so it refuses and we try the next
+            if(next.complete(null)) { return; }
+        }
+    }
+
+    // The installation was removed, jobs still waiting for their turn fail rather than wait on a limiter nobody releases into
+    public void shutdown(AnsibleTowerException reason) {
+        List<CompletableFuture<Void>> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<CompletableFuture<Void>>(waiting);
+            waiting.clear();
+        }
+        for(CompletableFuture<Void> permit : dropped) {
+            permit.completeExceptionally(reason);
+        }
+    }
+
+    // Tests hand out permits that get cancelled at the worst possible moment
+    CompletableFuture<Void> newPermit() {
+        return new CompletableFuture<Void>();
+    }
+}
@@ -0,0 +1,152 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/*
+ * Writes Tower output into the Jenkins build log.
+ * Characters are pushed through a small state machine that turns Tower's \r\n line endings into our own and,
+ * if asked to, drops ANSI escape sequences (any CSI sequence plus OSC and other escapes).
+ * The state survives between writes so a sequence split across chunks is still removed.
+ * Output is collected into a fixed buffer and handed to the build log a chunk at a time.
+ */
+public class TowerLogWriter extends Writer {
+    private static final int BUFFER_SIZE = 8192;
+    private static final String NEWLINE = System.lineSeparator();
+    private static final char ESC = '\u001B';
+    private static final char BEL = '\u0007';
+    private static final char C1_CSI = '\u009B';
+
+    private enum State { TEXT, ESCAPE, CSI, OSC, OSC_ESCAPE }
+
+    private final PrintStream jenkinsLogger;
+    private final boolean removeColor;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int count = 0;
+    private State state = State.TEXT;
+    private boolean pendingCR = false;
+
+    public TowerLogWriter(PrintStream jenkinsLogger, boolean removeColor) {
+        this.jenkinsLogger = jenkinsLogger;
+        this.removeColor = removeColor;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for(int i = off; i < off + len; i++) { process(cbuf[i]); }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        for(int i = off; i < off + len; i++) { process(str.charAt(i)); }
+    }
+
+    @Override
+    public void write(String str) {
+        write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(int c) {
+        process((char) c);
+    }
+
+    // Ends the current line, each Tower event is printed as its own line
+    public void endLine() {
+        if(pendingCR) {
+            pendingCR = false;
+            put('\r');
+        }
+        // An escape sequence never carries over from one event to the next
+        state = State.TEXT;
+        putNewLine();
+    }
+
+    @Override
+    public void flush() {
+        if(count > 0) {
+            jenkinsLogger.print(count == BUFFER_SIZE ? buffer : Arrays.copyOf(buffer, count));
+            count = 0;
+        }
+        jenkinsLogger.flush();
+    }
+
+    @Override
+    public void close() {
+        // The build log belongs to Jenkins, we only flush what we have
+        flush();
+    }
+
+    private void process(char c) {
+        if(removeColor) {
+            switch(state) {
+                case ESCAPE:
+                    if(c == '[') {
+                        state = State.CSI;
+                    } else if(c == ']') {
+                        state = State.OSC;
+                    } else if(c < 0x20 || c > 0x2F) {
+                        // The final character of the escape goes with it, intermediates such as the ( of ESC ( B
+                        // (what tput sgr0 sends) keep us in the escape
+                        state = State.TEXT;
+                    }
+                    return;
+                case CSI:
+                    if(c < 0x20 || c > 0x7E) {
+                        // Not a valid sequence after all, don't swallow real output
+                        state = State.TEXT;
+                        break;
+                    }
+                    // Parameter and intermediate bytes are dropped until the final byte ends the sequence
+                    if(c >= 0x40) { state = State.TEXT; }
+                    return;
+                case OSC:
+                    if(c == BEL) {
+                        state = State.TEXT;
+                    } else if(c == ESC) {
+                        state = State.OSC_ESCAPE;
+                    }
+                    return;
+                case OSC_ESCAPE:
+                    // ESC \ is the string terminator, anything else still ends the sequence
+                    state = State.TEXT;
+                    return;
+                default:
+                    if(c == ESC) {
+                        state = State.ESCAPE;
+                        return;
+                    } else if(c == C1_CSI) {
+                        state = State.CSI;
+                        return;
+                    }
+            }
+        }
+        text(c);
+    }
+
+    private void text(char c) {
+        if(pendingCR) {
+            pendingCR = false;
+            if(c == '\n') {
+                putNewLine();
+                return;
+            }
+            put('\r');
+        }
+        if(c == '\r') {
+            pendingCR = true;
+            return;
+        }
+        put(c);
+    }
+
+    private void putNewLine() {
+        for(int i = 0; i < NEWLINE.length(); i++) { put(NEWLINE.charAt(i)); }
+    }
+
+    private void put(char c) {
+        if(count == BUFFER_SIZE) { flush(); }
+        buffer[count++] = c;
+    }
+}
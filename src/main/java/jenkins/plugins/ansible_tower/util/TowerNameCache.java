@@ -0,0 +1,63 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Remembers which id a job template, inventory or credential name resolved to on a Tower installation.
+ * Entries expire after a while so renames in Tower are eventually picked up and the oldest entries
+ * are dropped once the cache is full.
+ */
+public class TowerNameCache {
+    public static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    private final long ttl;
+    private final Map<String, CachedID> entries;
+
+    public TowerNameCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    public TowerNameCache(long ttl, final int maxEntries) {
+        this.ttl = ttl;
+        // Access ordered so the least recently used name is the one that falls off
+        this.entries = new LinkedHashMap<String, CachedID>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedID> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized Integer get(String api_endpoint, String name) {
+        String key = api_endpoint + name;
+        CachedID cached = entries.get(key);
+        if(cached == null) { return null; }
+        if(cached.expires < System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return cached.id;
+    }
+
+    public synchronized void put(String api_endpoint, String name, int id) {
+        entries.put(api_endpoint + name, new CachedID(id, System.currentTimeMillis() + ttl));
+    }
+
+    // Returns true if there was something cached for the name
+    public synchronized boolean invalidate(String api_endpoint, String name) {
+        return entries.remove(api_endpoint + name) != null;
+    }
+
+    private static class CachedID {
+        private final int id;
+        private final long expires;
+
+        private CachedID(int id, long expires) {
+            this.id = id;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Spreads requests across the API nodes of a clustered Tower.
+ * Each request goes to the healthy node with the fewest requests outstanding, ties are broken round robin.
+ * A node that keeps failing is left out for a while and then tried again, if every node is out we use the one
+ * that has been out the longest rather than fail without trying.
+ */
+public class TowerNodeBalancer {
+    static final int EJECT_AFTER_FAILURES = 2;
+    static final long EJECT_DURATION = TimeUnit.SECONDS.toMillis(30);
+
+    public static class Node {
+        private final String url;
+        private int outstanding = 0;
+        private int consecutiveFailures = 0;
+        private long ejectedUntil = 0;
+
+        private Node(String url) {
+            this.url = url;
+        }
+
+        public String getURL() { return url; }
+    }
+
+    private final List<Node> nodes = new ArrayList<Node>();
+    private int nextStart = 0;
+
+    public TowerNodeBalancer(List<String> urls) {
+        for(String url : urls) { nodes.add(new Node(url)); }
+    }
+
+    public List<Node> getNodes() { return Collections.unmodifiableList(nodes); }
+
+    public synchronized List<String> getURLs() {
+        List<String> urls = new ArrayList<String>();
+        for(Node node : nodes) { urls.add(node.url); }
+        return urls;
+    }
+
+    public synchronized int getOutstanding(Node node) { return node.outstanding; }
+    public synchronized boolean isEjected(Node node) { return node.ejectedUntil > now(); }
+
+    public boolean isCompatible(List<String> urls) {
+        return getURLs().equals(urls);
+    }
+
+    // Picks the node for the next request, avoid (if given and there is a choice) is the node that just failed us
+    public synchronized Node choose(Node avoid) {
+        long now = now();
+        Node best = null;
+        int bestIndex = nextStart;
+        Node leastEjected = null;
+        for(int i = 0; i < nodes.size(); i++) {
+            int index = (nextStart + i) % nodes.size();
+            Node node = nodes.get(index);
+            if(node.ejectedUntil > now) {
+                if(leastEjected == null || node.ejectedUntil < leastEjected.ejectedUntil) { leastEjected = node; }
+                continue;
+            }
+            if(best == null || (best == avoid && node != avoid) ||
+               (node != avoid && node.outstanding < best.outstanding)) {
+                best = node;
+                bestIndex = index;
+            }
+        }
+        // The next search starts after the node we picked, starting after the previous start instead would hand
+        // the node following an ejected one its share as well
+        nextStart = (bestIndex + 1) % nodes.size();
+        return best != null ? best : leastEjected;
+    }
+
+    public synchronized void acquire(Node node) {
+        node.outstanding++;
+    }
+
+    // The health monitor's verdict, a node it can't reach stays out until it answers again
+    public synchronized void markDown(String url, long until) {
+        for(Node node : nodes) {
+            if(node.url.equals(url)) { node.ejectedUntil = Math.max(node.ejectedUntil, until); }
+        }
+    }
+
+    public synchronized void markUp(String url) {
+        for(Node node : nodes) {
+            if(node.url.equals(url) && node.consecutiveFailures < EJECT_AFTER_FAILURES) { node.ejectedUntil = 0; }
+        }
+    }
+
+    // For a request that never reached the node, so it says nothing about its health
+    public synchronized void release(Node node) {
+        node.outstanding--;
+    }
+
+    public synchronized void release(Node node, boolean healthy) {
+        node.outstanding--;
+        if(healthy) {
+            node.consecutiveFailures = 0;
+            node.ejectedUntil = 0;
+        } else if(++node.consecutiveFailures >= EJECT_AFTER_FAILURES) {
+            node.ejectedUntil = now() + EJECT_DURATION;
+        }
+    }
+
+    // Tests step the clock instead of waiting out an ejection
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
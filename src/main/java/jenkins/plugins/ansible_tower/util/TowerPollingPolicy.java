@@ -0,0 +1,43 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Decides how long to wait before asking Tower about a job again.
+ * We start out polling quickly, back off exponentially while the job is quiet and drop back to
+ * the fast interval as soon as something happens (new events or a status change).
+ */
+public class TowerPollingPolicy {
+    // Intervals are configured in seconds like the connection timeouts, delays are handed back in milliseconds
+    public static final int DEFAULT_MIN_INTERVAL = 1;
+    public static final int DEFAULT_MAX_INTERVAL = 30;
+
+    private static final double BACKOFF_MULTIPLIER = 2.0;
+    // Spread polls out by up to this fraction either way so builds launched together don't poll in lock step
+    private static final double JITTER = 0.2;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private long currentInterval;
+
+    public TowerPollingPolicy(int minInterval, int maxInterval) {
+        this.minInterval = TimeUnit.SECONDS.toMillis(minInterval > 0 ? minInterval : DEFAULT_MIN_INTERVAL);
+        this.maxInterval = Math.max(this.minInterval, TimeUnit.SECONDS.toMillis(maxInterval > 0 ? maxInterval : DEFAULT_MAX_INTERVAL));
+        this.currentInterval = this.minInterval;
+    }
+
+    // In milliseconds
+    public long getMinInterval() { return minInterval; }
+    public long getMaxInterval() { return maxInterval; }
+
+    public synchronized long nextDelay(boolean sawActivity) {
+        if(sawActivity) {
+            currentInterval = minInterval;
+        } else {
+            currentInterval = Math.min(maxInterval, (long) (currentInterval * BACKOFF_MULTIPLIER));
+        }
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Math.max(minInterval, Math.min(maxInterval, (long) (currentInterval * jitter)));
+    }
+}
@@ -0,0 +1,69 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/*
+ * Writes to a shared build log a whole line at a time with a prefix in front of every line.
+ * Several Tower jobs can print into the same log this way and each line still says which job it came from.
+ */
+public class TowerPrefixedOutputStream extends OutputStream {
+    private final PrintStream out;
+    private final byte[] prefix;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    public TowerPrefixedOutputStream(PrintStream out, String prefix) {
+        this.out = out;
+        this.prefix = prefix.getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        line.write(b);
+        if(b == '\n') { writeLine(); }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        int start = off;
+        for(int i = off; i < off + len; i++) {
+            if(b[i] == '\n') {
+                line.write(b, start, i + 1 - start);
+                writeLine();
+                start = i + 1;
+            }
+        }
+        line.write(b, start, off + len - start);
+    }
+
+    // A partial line is held back until it is finished, otherwise another job could print into the middle of it
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        if(line.size() > 0) {
+            line.write('\n');
+            writeLine();
+        }
+        out.flush();
+    }
+
+    private void writeLine() {
+        // Lock the shared log so our prefix and line go out together
+        synchronized (out) {
+            out.write(prefix, 0, prefix.length);
+            try {
+                line.writeTo(out);
+            } catch(IOException ioe) {
+                // PrintStream doesn't throw, it records the error for checkError()
+            }
+        }
+        line.reset();
+    }
+}
@@ -0,0 +1,63 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Keeps a burst of builds from overwhelming a Tower installation.
+ * Every request takes a token from a bucket that refills at a fixed rate and then a slot out of a fixed number
+ * of requests allowed to be in flight at once. Callers that arrive when the bucket is empty reserve the next
+ * token in arrival order and the in flight slots are handed out fairly, so nobody is starved under load.
+ */
+public class TowerRequestLimiter {
+    public static final int DEFAULT_REQUESTS_PER_SECOND = 20;
+    public static final int DEFAULT_MAX_IN_FLIGHT = 10;
+
+    private final int requestsPerSecond;
+    private final int maxInFlight;
+    private final double tokensPerNano;
+    private final Semaphore inFlight;
+    private double tokens;
+    private long lastRefill;
+
+    public TowerRequestLimiter(int requestsPerSecond, int maxInFlight) {
+        this.requestsPerSecond = requestsPerSecond > 0 ? requestsPerSecond : DEFAULT_REQUESTS_PER_SECOND;
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT;
+        this.tokensPerNano = this.requestsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.inFlight = new Semaphore(this.maxInFlight, true);
+        // The bucket holds a second's worth of requests and starts out full
+        this.tokens = this.requestsPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public int getRequestsPerSecond() { return requestsPerSecond; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public int getInFlight() { return maxInFlight - inFlight.availablePermits(); }
+    public int getQueued() { return inFlight.getQueueLength(); }
+
+    public boolean isCompatible(int requestsPerSecond, int maxInFlight) {
+        return this.requestsPerSecond == (requestsPerSecond > 0 ? requestsPerSecond : DEFAULT_REQUESTS_PER_SECOND) &&
+               this.maxInFlight == (maxInFlight > 0 ? maxInFlight : DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    // Blocks until the request may go out and returns how many milliseconds the caller was held back
+    public long acquire() throws InterruptedException {
+        long start = System.nanoTime();
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(requestsPerSecond, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            // Going below zero reserves a future token, everyone after us waits behind that reservation
+            tokens -= 1;
+            wait = tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+        if(wait > 0) { TimeUnit.NANOSECONDS.sleep(wait); }
+        inFlight.acquire();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    public void release() {
+        inFlight.release();
+    }
+}
@@ -0,0 +1,136 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One Tower auth token per installation, shared by every build.
+ * Basic auth makes Tower check the password on every request, with a token it only does so when we log in.
+ * The token is renewed a little before Tower says it expires, if Tower doesn't offer tokens we stick to Basic auth.
+ */
+public class TowerTokenCache {
+    static final long REFRESH_MARGIN = TimeUnit.MINUTES.toMillis(1);
+    // Used when Tower doesn't tell us (or we can't read) when the token expires, Tower's own default is 30 minutes
+    static final long DEFAULT_LIFETIME = TimeUnit.MINUTES.toMillis(10);
+    // How long we believe Tower has no token endpoint before asking again, it may have been upgraded
+    static final long UNSUPPORTED_RECHECK = TimeUnit.HOURS.toMillis(1);
+
+    // Replaced as a whole so builds holding a fresh token can read it without taking our lock
+    private volatile Login current = null;
+    private volatile long unsupportedUntil = 0;
+    // The login on its way to Tower, builds that find the token stale meanwhile wait on it instead of logging in too
+    private CompletableFuture<Login> pending = null;
+
+    private static final class Login {
+        // null if Tower has no token endpoint
+        private final String token;
+        private final String credentialsKey;
+        private final long expires;
+
+        private Login(String token, String credentialsKey, long expires) {
+            this.token = token;
+            this.credentialsKey = credentialsKey;
+            this.expires = expires;
+        }
+
+        private boolean isFreshFor(String credentialsFingerprint, long now) {
+            // The credentials behind an installation can change, a token we got for other ones is no good
+            return token != null && credentialsFingerprint.equals(credentialsKey) && now < expires - REFRESH_MARGIN;
+        }
+    }
+
+    public String getToken(String credentialsFingerprint, TowerConnector connector) throws AnsibleTowerException {
+        while(true) {
+            long now = now();
+            if(now < unsupportedUntil) { return null; }
+            Login login = current;
+            if(login != null && login.isFreshFor(credentialsFingerprint, now)) { return login.token; }
+
+            CompletableFuture<Login> inFlight;
+            boolean ours = false;
+            synchronized (this) {
+                // Someone may have finished logging in while we were on our way here
+                login = current;
+                if(login != null && login.isFreshFor(credentialsFingerprint, now)) { return login.token; }
+                if(pending == null) {
+                    pending = new CompletableFuture<Login>();
+                    ours = true;
+                }
+                inFlight = pending;
+            }
+            if(ours) { return logIn(credentialsFingerprint, connector, inFlight, now).token; }
+
+            login = await(inFlight);
+            if(login.credentialsKey.equals(credentialsFingerprint)) { return login.token; }
+            // That login was for other credentials (the installation's changed under us), go round again for ours
+        }
+    }
+
+    // Talks to Tower without holding our lock so renewing the token never stalls builds that only need to read it
+    private Login logIn(
+            String credentialsFingerprint, TowerConnector connector, CompletableFuture<Login> inFlight, long now
+    ) throws AnsibleTowerException {
+        Login login;
+        try {
+            TowerJsonReader.AuthToken authToken = connector.requestAuthToken();
+            login = authToken == null ?
+                    new Login(null, credentialsFingerprint, 0) :
+                    new Login(authToken.token, credentialsFingerprint, parseExpires(authToken.expires, now));
+        } catch(AnsibleTowerException | RuntimeException e) {
+            synchronized (this) {
+                pending = null;
+            }
+            inFlight.completeExceptionally(e);
+            throw e;
+        }
+        synchronized (this) {
+            if(login.token == null) {
+                current = null;
+                unsupportedUntil = now + UNSUPPORTED_RECHECK;
+            } else {
+                current = login;
+            }
+            pending = null;
+        }
+        inFlight.complete(login);
+        return login;
+    }
+
+    private static Login await(CompletableFuture<Login> inFlight) throws AnsibleTowerException {
+        try {
+            return inFlight.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AnsibleTowerException("Interrupted while waiting to log in to Tower");
+        } catch(ExecutionException e) {
+            // The build that logged in has already reported it, we fail the same way
+            throw new AnsibleTowerException(e.getCause().getMessage());
+        }
+    }
+
+    public synchronized void invalidate(String rejectedToken) {
+        Login login = current;
+        if(login != null && rejectedToken.equals(login.token)) { current = null; }
+    }
+
+    private static long parseExpires(String expires, long now) {
+        if(expires != null) {
+            try {
+                return Instant.parse(expires).toEpochMilli();
+            } catch(DateTimeParseException e) {
+                // Fall through to the default
+            }
+        }
+        return now + DEFAULT_LIFETIME;
+    }
+
+    // Tests step the clock instead of waiting for the token to expire
+    long now() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,25 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * How many response bytes came over the wire from a Tower installation and how many they decoded to.
+ * With compression off (or for responses Tower didn't compress) the two grow together.
+ */
+public class TowerTrafficStats {
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+
+    public void addWireBytes(long bytes) { wireBytes.addAndGet(bytes); }
+    public void addDecodedBytes(long bytes) { decodedBytes.addAndGet(bytes); }
+
+    public long getWireBytes() { return wireBytes.get(); }
+    public long getDecodedBytes() { return decodedBytes.get(); }
+
+    // Percentage of the decoded size that compression saved us, 0 until we have read anything
+    public int getSavedPercent() {
+        long decoded = decodedBytes.get();
+        if(decoded == 0) { return 0; }
+        return (int) Math.max(0, 100 - (wireBytes.get() * 100 / decoded));
+    }
+}
@@ -0,0 +1,64 @@
+package jenkins.plugins.ansible_tower.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * The ETag and Last-Modified Tower sent for a GET, together with what we made of the response.
+ * The next GET of the endpoint asks Tower to answer 304 if nothing changed and we hand back the parsed result
+ * we already have, neither side has to build or parse the body again.
+ * Only a bounded number of endpoints are remembered, the least recently used one falls off first.
+ */
+public class TowerValidatorCache {
+    public static final int DEFAULT_MAX_ENTRIES = 200;
+
+    private final Map<String, Entry> entries;
+
+    public TowerValidatorCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public TowerValidatorCache(final int maxEntries) {
+        // Access ordered so the endpoint we polled longest ago is the one that falls off
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized Entry get(String endpoint) {
+        return entries.get(endpoint);
+    }
+
+    public synchronized void put(String endpoint, String eTag, String lastModified, Object value) {
+        if(eTag == null && lastModified == null) {
+            // Nothing to revalidate with, holding on to the value would only waste memory
+            entries.remove(endpoint);
+            return;
+        }
+        entries.put(endpoint, new Entry(eTag, lastModified, value));
+    }
+
+    public synchronized void invalidate(String endpoint) {
+        entries.remove(endpoint);
+    }
+
+    // Values are shared between builds so they must never be modified once cached
+    public static class Entry {
+        private final String eTag;
+        private final String lastModified;
+        private final Object value;
+
+        private Entry(String eTag, String lastModified, Object value) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        public String getETag() { return eTag; }
+        public String getLastModified() { return lastModified; }
+        public Object getValue() { return value; }
+    }
+}
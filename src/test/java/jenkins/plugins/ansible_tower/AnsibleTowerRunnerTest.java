@@ -0,0 +1,44 @@
+package jenkins.plugins.ansible_tower;
+
+import jenkins.plugins.ansible_tower.util.TowerInstallation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.PrintStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AnsibleTowerRunnerTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final PrintStream logger = System.out;
+
+    // Every build has to land on the configured installation, anything else gets its own pool, poller and limits
+    @Test
+    public void buildsShareTheConfiguredInstallation() throws Exception {
+        TowerInstallation installation = new TowerInstallation("tower", "https://tower.example.com", null, false);
+        AnsibleTowerGlobalConfig.get().setTowerInstallation(Collections.singletonList(installation));
+
+        AnsibleTowerRunner first = new AnsibleTowerRunner();
+        AnsibleTowerRunner second = new AnsibleTowerRunner();
+        assertSame(installation, first.getInstallation(logger, "tower"));
+        assertSame(installation, second.getInstallation(logger, "tower"));
+        assertSame(
+                first.getInstallation(logger, "tower").getConnectionPool(),
+                second.getInstallation(logger, "tower").getConnectionPool()
+        );
+        assertSame(
+                first.getInstallation(logger, "tower").getJobPoller(),
+                second.getInstallation(logger, "tower").getJobPoller()
+        );
+    }
+
+    @Test
+    public void unknownInstallation() {
+        assertNull(new AnsibleTowerRunner().getInstallation(logger, "missing"));
+    }
+}
@@ -0,0 +1,96 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TowerCircuitBreakerTest {
+    private static class SteppedBreaker extends TowerCircuitBreaker {
+        long time = 1000;
+
+        @Override
+        long now() { return time; }
+    }
+
+    private final SteppedBreaker breaker = new SteppedBreaker();
+
+    private void fail(int times) {
+        for(int i = 0; i < times; i++) { breaker.recordFailure(); }
+    }
+
+    private void open() {
+        fail(TowerCircuitBreaker.FAILURE_THRESHOLD);
+        assertEquals(TowerCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void staysClosedBelowTheThreshold() {
+        fail(TowerCircuitBreaker.FAILURE_THRESHOLD - 1);
+        assertEquals(TowerCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    // The threshold counts failures in a row, a success in between starts the count again
+    @Test
+    public void successResetsTheCount() {
+        fail(TowerCircuitBreaker.FAILURE_THRESHOLD - 1);
+        breaker.recordSuccess();
+        fail(TowerCircuitBreaker.FAILURE_THRESHOLD - 1);
+        assertEquals(TowerCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void openRefusesRequestsUntilTheOpenPeriodIsOver() {
+        open();
+        assertFalse(breaker.allowRequest());
+        breaker.time += TowerCircuitBreaker.OPEN_DURATION - 1;
+        assertFalse(breaker.allowRequest());
+        breaker.time += 1;
+        assertTrue(breaker.allowRequest());
+        assertEquals(TowerCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void onlyOneProbeAtATime() {
+        open();
+        breaker.time += TowerCircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successfulProbeCloses() {
+        open();
+        breaker.time += TowerCircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(TowerCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    // A failed probe opens the breaker for another full period, without needing the threshold again
+    @Test
+    public void failedProbeReopens() {
+        open();
+        breaker.time += TowerCircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(TowerCircuitBreaker.State.OPEN, breaker.getState());
+        breaker.time += TowerCircuitBreaker.OPEN_DURATION - 1;
+        assertFalse(breaker.allowRequest());
+        breaker.time += 1;
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void skippedProbeLetsTheNextRequestProbe() {
+        open();
+        breaker.time += TowerCircuitBreaker.OPEN_DURATION;
+        assertTrue(breaker.allowRequest());
+        breaker.recordSkipped();
+        assertEquals(TowerCircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+}
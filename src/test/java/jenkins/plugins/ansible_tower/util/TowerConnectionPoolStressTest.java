@@ -0,0 +1,159 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Many builds sharing a small pool, with Tower answering every way it can go wrong.
+ * A response that isn't handed back to the pool on some error path only shows up once the pool runs dry,
+ * so we go through far more requests than there are connections and then check nothing is still leased.
+ */
+public class TowerConnectionPoolStressTest {
+    private static final int CONNECTIONS = 2;
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 40;
+
+    private TowerStub tower;
+    private TowerConnectionPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        tower = new TowerStub();
+        // One second reads so the slow answers time out, a long lease wait so a leak hangs instead of failing fast
+        pool = new TowerConnectionPool(false, CONNECTIONS, 60, 5, 1, 10);
+        for(int jobID = 0; jobID < Outcome.values().length; jobID++) {
+            final Outcome outcome = Outcome.values()[jobID];
+            final int id = jobID;
+            tower.on("/api/v1/jobs/"+ jobID +"/", new TowerStub.Handler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException { outcome.respond(exchange, id); }
+            });
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        tower.close();
+    }
+
+    private enum Outcome {
+        OK {
+            @Override
+            void respond(HttpExchange exchange, int jobID) throws IOException {
+                TowerStub.respond(exchange, 200, "{\"id\": "+ jobID +", \"status\": \"running\", \"failed\": false, \"finished\": null}");
+            }
+        },
+        NOT_FOUND {
+            @Override
+            void respond(HttpExchange exchange, int jobID) throws IOException {
+                TowerStub.respond(exchange, 404, "{\"detail\": \"Not found.\"}");
+            }
+        },
+        UNAVAILABLE {
+            @Override
+            void respond(HttpExchange exchange, int jobID) throws IOException {
+                TowerStub.respond(exchange, 503, "<html>"+ padding() +"</html>");
+            }
+        },
+        SERVER_ERROR {
+            @Override
+            void respond(HttpExchange exchange, int jobID) throws IOException {
+                TowerStub.respond(exchange, 500, "{\"detail\": \""+ padding() +"\"}");
+            }
+        },
+        // The reader gives up on the first token with most of the body still unread
+        NOT_A_JOB {
+            @Override
+            void respond(HttpExchange exchange, int jobID) throws IOException {
+                TowerStub.respond(exchange, 200, "[\""+ padding() +"\"]");
+            }
+        },
+        TOO_SLOW {
+            @Override
+            void respond(HttpExchange exchange, int jobID) throws IOException {
+                try {
+                    Thread.sleep(1500);
+                } catch(InterruptedException e) {
+                    throw new IOException(e);
+                }
+                OK.respond(exchange, jobID);
+            }
+        };
+
+        abstract void respond(HttpExchange exchange, int jobID) throws IOException;
+
+        // Bigger than the socket buffers so an unread body really is left on the connection
+        private static String padding() {
+            StringBuilder padding = new StringBuilder();
+            for(int i = 0; i < 16 * 1024; i++) { padding.append('x'); }
+            return padding.toString();
+        }
+    }
+
+    @Test
+    public void everyErrorPathHandsItsConnectionBack() throws Exception {
+        final AtomicInteger ok = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final List<String> poolTimeouts = new ArrayList<String>();
+        ExecutorService builds = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> done = new ArrayList<Future<?>>();
+        for(int thread = 0; thread < THREADS; thread++) {
+            final int offset = thread;
+            done.add(builds.submit(new Runnable() {
+                @Override
+                public void run() {
+                    TowerConnector connector = new TowerConnector(tower.getURL(), "admin", "password", pool);
+                    connector.setRetryRequests(false);
+                    for(int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        // Only the odd slow request, they hold a connection for the whole read timeout
+                        int jobID = (offset + i) % (Outcome.values().length - 1);
+                        if(i % 20 == 19) { jobID = Outcome.TOO_SLOW.ordinal(); }
+                        try {
+                            connector.getJobStatus(jobID);
+                            ok.incrementAndGet();
+                        } catch(AnsibleTowerException e) {
+                            failed.incrementAndGet();
+                            if(e.getMessage().contains("Timeout waiting for connection")) {
+                                // The pool has run dry, waiting out the lease on every request that follows tells us nothing more
+                                synchronized (poolTimeouts) { poolTimeouts.add(e.getMessage()); }
+                                return;
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for(Future<?> build : done) { build.get(5, TimeUnit.MINUTES); }
+        builds.shutdown();
+
+        assertEquals("Builds that ran out of connections", 0, poolTimeouts.size());
+        assertEquals(THREADS * REQUESTS_PER_THREAD, ok.get() + failed.get());
+        assertTrue(ok.get() > 0);
+
+        // Every connection still open after the idle ones are closed is one somebody forgot to hand back
+        ThreadSafeClientConnManager manager = (ThreadSafeClientConnManager) pool.getHttpClient().getConnectionManager();
+        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        assertEquals(0, manager.getConnectionsInPool());
+
+        // And the pool still works
+        TowerConnector connector = new TowerConnector(tower.getURL(), "admin", "password", pool);
+        assertEquals(Outcome.OK.ordinal(), connector.getJobStatus(Outcome.OK.ordinal()).getJobID());
+    }
+}
@@ -0,0 +1,126 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TowerConnectorCompressionTest {
+    private static final String EVENTS = "/api/v1/jobs/1/job_events/";
+    private static final int COUNT = 200;
+
+    private TowerStub tower;
+    private final TowerTrafficStats stats = new TowerTrafficStats();
+    private final List<String> acceptEncodings = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        tower = new TowerStub();
+        // Gzips the page whenever we say we can take it, like the nginx in front of Tower does
+        tower.on(EVENTS, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                acceptEncodings.add(acceptEncoding);
+                byte[] body = eventsPage().getBytes(StandardCharsets.UTF_8);
+                if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                    try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                        out.write(body);
+                    }
+                    body = gzipped.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        tower.close();
+    }
+
+    private static String eventsPage() {
+        StringBuilder page = new StringBuilder("{\"next\": null, \"results\": [");
+        for(int i = 1; i <= COUNT; i++) {
+            if(i > 1) { page.append(", "); }
+            page.append("{\"counter\": ").append(i).append(", \"event_data\": {\"host\": \"web").append(i).append("\"},")
+                .append(" \"stdout\": \"TASK [common : install packages] ok: [web").append(i).append("]\"}");
+        }
+        return page.append("]}").toString();
+    }
+
+    private String importEvents(boolean compression) throws Exception {
+        TowerConnector connector = new TowerConnector(tower.getURL(), "admin", "password");
+        connector.setCompression(compression);
+        connector.setTrafficStats(stats);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        try {
+            assertEquals(COUNT, connector.logJobEvents(1, new PrintStream(log, true, "UTF-8"), false));
+        } finally {
+            connector.close();
+        }
+        return log.toString("UTF-8");
+    }
+
+    @Test
+    public void compressedEventsPrintTheSame() throws Exception {
+        String plain = importEvents(false);
+        assertNull(acceptEncodings.get(0));
+        assertEquals(0, stats.getSavedPercent());
+
+        String compressed = importEvents(true);
+        assertEquals("gzip, deflate", acceptEncodings.get(1));
+        assertEquals(plain, compressed);
+        assertTrue(compressed.contains("ok: [web200]"));
+    }
+
+    @Test
+    public void savingsAreCounted() throws Exception {
+        importEvents(true);
+        assertEquals(eventsPage().length(), stats.getDecodedBytes());
+        assertTrue("saved "+ stats.getSavedPercent() +"%", stats.getSavedPercent() > 80);
+    }
+
+    @Test
+    public void unknownEncodingIsRefused() throws Exception {
+        tower.on(EVENTS, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Encoding", "br");
+                TowerStub.respond(exchange, 200, "not really brotli");
+            }
+        });
+        TowerConnector connector = new TowerConnector(tower.getURL(), "admin", "password");
+        connector.setCompression(true);
+        try {
+            connector.logJobEvents(1, new PrintStream(new ByteArrayOutputStream(), true, "UTF-8"), false);
+            fail("Expected the brotli response to be refused");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("unsupported encoding (br)"));
+        } finally {
+            connector.close();
+        }
+    }
+}
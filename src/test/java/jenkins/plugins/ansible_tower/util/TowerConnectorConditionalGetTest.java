@@ -0,0 +1,151 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TowerConnectorConditionalGetTest {
+    private static final String JOB = "/api/v1/jobs/5/";
+    private static final String RUNNING = "{\"id\": 5, \"status\": \"running\", \"failed\": false, \"finished\": null}";
+    private static final String DONE = "{\"id\": 5, \"status\": \"successful\", \"failed\": false, \"finished\": \"2017-05-01T10:00:00Z\"}";
+    private static final String MODIFIED = "Mon, 01 May 2017 10:00:00 GMT";
+
+    private TowerStub tower;
+    private TowerConnector connector;
+    private final TowerValidatorCache validatorCache = new TowerValidatorCache();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        tower = new TowerStub();
+        connector = connector();
+    }
+
+    @After
+    public void tearDown() {
+        connector.close();
+        tower.close();
+    }
+
+    private TowerConnector connector() throws Exception {
+        TowerConnector connector = new TowerConnector(tower.getURL(), "admin", "password");
+        connector.setValidatorCache(validatorCache);
+        return connector;
+    }
+
+    // Tags each body with its hash and answers 304 when the caller already has it, the way Tower's ETag middleware does
+    private void serve(String path, final String... bodies) {
+        final int[] served = { 0 };
+        tower.on(path, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String body = bodies[Math.min(served[0]++, bodies.length - 1)];
+                String eTag = "\""+ Integer.toHexString(body.hashCode()) +"\"";
+                exchange.getResponseHeaders().set("ETag", eTag);
+                if(eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    TowerStub.respond(exchange, 304, body);
+                } else {
+                    TowerStub.respond(exchange, 200, body);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void unchangedJobIsNotSentAgain() throws Exception {
+        serve(JOB, RUNNING);
+        JobStatus first = connector.getJobStatus(5);
+        JobStatus second = connector.getJobStatus(5);
+        // Nothing was parsed the second time, we got back what we had
+        assertSame(first, second);
+        assertEquals("running", second.getStatus());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    public void changedJobIsParsedAgain() throws Exception {
+        serve(JOB, RUNNING, DONE);
+        JobStatus first = connector.getJobStatus(5);
+        JobStatus second = connector.getJobStatus(5);
+        assertNotSame(first, second);
+        assertEquals("successful", second.getStatus());
+        assertEquals(0, notModified.get());
+        // And the new version is the one revalidated from now on
+        assertSame(second, connector.getJobStatus(5));
+    }
+
+    // The cache belongs to the installation, one build's response saves the next build the body
+    @Test
+    public void buildsShareValidators() throws Exception {
+        serve(JOB, RUNNING);
+        JobStatus first = connector.getJobStatus(5);
+        TowerConnector other = connector();
+        try {
+            assertSame(first, other.getJobStatus(5));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void lastModifiedIsSentBack() throws Exception {
+        final List<String> sinces = Collections.synchronizedList(new ArrayList<String>());
+        tower.on(JOB, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                sinces.add(since);
+                exchange.getResponseHeaders().set("Last-Modified", MODIFIED);
+                TowerStub.respond(exchange, MODIFIED.equals(since) ? 304 : 200, RUNNING);
+            }
+        });
+        JobStatus first = connector.getJobStatus(5);
+        assertSame(first, connector.getJobStatus(5));
+        assertEquals(Arrays.asList(null, MODIFIED), sinces);
+    }
+
+    @Test
+    public void withoutTheCacheEveryGetIsUnconditional() throws Exception {
+        serve(JOB, RUNNING);
+        TowerConnector plain = new TowerConnector(tower.getURL(), "admin", "password");
+        try {
+            assertNotSame(plain.getJobStatus(5), plain.getJobStatus(5));
+        } finally {
+            plain.close();
+        }
+        assertEquals(0, notModified.get());
+        assertNull(validatorCache.get(JOB));
+    }
+
+    @Test
+    public void batchedStatusesAndNameLookupsRevalidateToo() throws Exception {
+        serve("/api/v1/jobs/", "{\"next\": null, \"results\": ["+ RUNNING +"]}");
+        serve("/api/v1/job_templates/", "{\"next\": null, \"results\": [{\"id\": 7, \"name\": \"deploy\"}]}");
+        tower.onJson("/api/v1/job_templates/7/launch/", 201, "{\"id\": 5}");
+
+        Map<Integer, JobStatus> first = connector.getJobStatuses(Collections.singletonList(5));
+        Map<Integer, JobStatus> second = connector.getJobStatuses(Collections.singletonList(5));
+        assertSame(first.get(5), second.get(5));
+        assertEquals(1, notModified.get());
+
+        assertEquals(5, connector.submitJob("deploy", null, null, null, null, null));
+        assertEquals(5, connector.submitJob("deploy", null, null, null, null, null));
+        assertEquals(2, tower.count("GET /api/v1/job_templates/?name=deploy"));
+        assertEquals(2, notModified.get());
+    }
+}
@@ -0,0 +1,147 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TowerConnectorRetryTest {
+    private static final String PING = "/api/v1/ping/";
+
+    private TowerStub tower;
+    private TowerConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        tower = new TowerStub();
+        connector = new TowerConnector(tower.getURL(), "admin", "password");
+    }
+
+    @After
+    public void tearDown() {
+        connector.close();
+        tower.close();
+    }
+
+    // Answers with each status in turn, then keeps repeating the last one
+    private void answer(String path, final int... statuses) {
+        final AtomicInteger calls = new AtomicInteger();
+        tower.on(path, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int status = statuses[Math.min(calls.getAndIncrement(), statuses.length - 1)];
+                TowerStub.respond(exchange, status, "{}");
+            }
+        });
+    }
+
+    @Test
+    public void getIsRetriedUntilTowerRecovers() throws Exception {
+        answer(PING, 502, 503, 200);
+        connector.testConnection();
+        assertEquals(3, tower.count("GET "+ PING));
+    }
+
+    @Test
+    public void getGivesUpAfterFourAttempts() throws Exception {
+        answer(PING, 504);
+        try {
+            connector.testConnection();
+            fail("Expected the 504 to be reported");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("504"));
+        }
+        assertEquals(4, tower.count("GET "+ PING));
+    }
+
+    // Only the statuses that mean "try again later" are retried
+    @Test
+    public void otherErrorsAreNotRetried() throws Exception {
+        answer(PING, 500);
+        try {
+            connector.testConnection();
+            fail("Expected the 500 to be reported");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("500"));
+        }
+        assertEquals(1, tower.count("GET "+ PING));
+    }
+
+    // Sending a launch again could start the job twice
+    @Test
+    public void launchIsNeverRetried() throws Exception {
+        answer("/api/v1/job_templates/7/launch/", 503, 201);
+        try {
+            connector.submitJob("7", null, null, null, null, null);
+            fail("Expected the 503 to be reported");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("503"));
+        }
+        assertEquals(1, tower.count("POST /api/v1/job_templates/7/launch/"));
+    }
+
+    @Test
+    public void retriesCanBeTurnedOff() throws Exception {
+        answer(PING, 503, 200);
+        connector.setRetryRequests(false);
+        try {
+            connector.testConnection();
+            fail("Expected the 503 to be reported");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("503"));
+        }
+        assertEquals(1, tower.count("GET "+ PING));
+    }
+
+    // Once the breaker is open requests fail without reaching Tower
+    @Test
+    public void openBreakerStopsRequests() throws Exception {
+        answer(PING, 503);
+        connector.setRetryRequests(false);
+        TowerCircuitBreaker breaker = new TowerCircuitBreaker();
+        connector.setCircuitBreaker(breaker);
+        for(int i = 0; i < TowerCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            try {
+                connector.testConnection();
+            } catch(AnsibleTowerException expected) { }
+        }
+        assertEquals(TowerCircuitBreaker.State.OPEN, breaker.getState());
+
+        try {
+            connector.testConnection();
+            fail("Expected the open breaker to refuse the request");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("has been failing"));
+        }
+        assertEquals(TowerCircuitBreaker.FAILURE_THRESHOLD, tower.count("GET "+ PING));
+    }
+
+    // A refused connection is as much an outage as a 503
+    @Test
+    public void connectionFailuresAreRetriedAndCount() throws Exception {
+        String url = tower.getURL();
+        tower.close();
+        TowerConnector down = new TowerConnector(url, "admin", "password");
+        TowerCircuitBreaker breaker = new TowerCircuitBreaker();
+        down.setCircuitBreaker(breaker);
+        try {
+            down.testConnection();
+            fail("Expected the refused connection to be reported");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to make tower request"));
+        } finally {
+            down.close();
+        }
+        // Every attempt counted against Tower, one more failure opens the breaker
+        breaker.recordFailure();
+        assertEquals(TowerCircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
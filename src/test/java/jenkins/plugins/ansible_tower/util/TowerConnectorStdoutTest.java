@@ -0,0 +1,140 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TowerConnectorStdoutTest {
+    private static final String NL = System.lineSeparator();
+
+    private TowerStub tower;
+    private TowerConnector connector;
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private PrintStream logger;
+
+    @Before
+    public void setUp() throws Exception {
+        tower = new TowerStub();
+        connector = new TowerConnector(tower.getURL(), "admin", "password");
+        logger = new PrintStream(log, true, "UTF-8");
+    }
+
+    @After
+    public void tearDown() {
+        connector.close();
+        tower.close();
+    }
+
+    @Test
+    public void importsWholeLinesFromWhereItLeftOff() throws Exception {
+        final AtomicInteger polls = new AtomicInteger();
+        tower.on("/api/v1/jobs/5/stdout/", new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String content = polls.incrementAndGet() == 1 ? "one\\ntwo\\nthr" : "three\\nfour";
+                TowerStub.respond(exchange, 200, "{\"range\": {}, \"content\": \""+ content +"\"}");
+            }
+        });
+
+        assertEquals(2, connector.logJobStdout(5, logger, false, false));
+        assertEquals(1, connector.logJobStdout(5, logger, false, true));
+        assertEquals("one\ntwo\nthree\nfour"+ NL, log.toString("UTF-8"));
+        assertTrue(tower.getRequests().contains("GET /api/v1/jobs/5/stdout/?format=json&content_format=ansi&start_line=2"));
+        assertEquals(3, connector.getStdoutLine());
+    }
+
+    @Test
+    public void cursorIsReadableWhileAnImportWaitsOnTower() throws Exception {
+        final CountDownLatch requested = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        tower.on("/api/v1/jobs/5/stdout/", new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requested.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch(InterruptedException e) {
+                    throw new IOException(e);
+                }
+                TowerStub.respond(exchange, 200, "{\"content\": \"one\\ntwo\\n\"}");
+            }
+        });
+        connector.setLogCursor(new TowerEventWindow(7), 40);
+
+        Thread importer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    connector.logJobStdout(5, logger, false, false);
+                } catch(Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        importer.start();
+        assertTrue(requested.await(10, TimeUnit.SECONDS));
+
+        // Saving the pipeline must not wait for Tower
+        assertEquals(40, connector.getStdoutLine());
+        assertEquals(7, connector.getSeenEvents().getPollAfter());
+
+        release.countDown();
+        importer.join(10000);
+        assertEquals(42, connector.getStdoutLine());
+    }
+
+    @Test
+    public void tooLargeStdoutCarriesOnFromTheEvents() throws Exception {
+        final AtomicInteger polls = new AtomicInteger();
+        tower.on("/api/v1/jobs/5/stdout/", new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String content = polls.incrementAndGet() == 1
+                        ? "one\\ntwo\\n"
+                        : "Standard Output too large to display (1048577 bytes), only download supported for sizes over 1048576 bytes";
+                TowerStub.respond(exchange, 200, "{\"range\": {}, \"content\": \""+ content +"\"}");
+            }
+        });
+        tower.on("/api/v1/jobs/5/job_events/", new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getQuery();
+                if(query.contains("order_by=-counter")) {
+                    // The last event that ends at or before line 2
+                    TowerStub.respond(exchange, 200, "{\"results\": [{\"counter\": 2, \"stdout\": \"two\", \"end_line\": 2}]}");
+                } else if(query.contains("counter__gt=2")) {
+                    TowerStub.respond(exchange, 200, "{\"next\": null, \"results\": ["
+                            + "{\"counter\": 3, \"stdout\": \"three\", \"start_line\": 2, \"end_line\": 3},"
+                            + "{\"counter\": 4, \"stdout\": \"four\", \"start_line\": 3, \"end_line\": 4}]}");
+                } else {
+                    TowerStub.respond(exchange, 200, "{\"next\": null, \"results\": []}");
+                }
+            }
+        });
+
+        connector.logJobStdout(5, logger, false, false);
+        connector.logJobStdout(5, logger, false, false);
+        String output = log.toString("UTF-8");
+        assertTrue(output, output.startsWith("one\ntwo\n"));
+        assertTrue(output, output.contains("too large for Tower to display"));
+        assertTrue(output, output.endsWith("three"+ NL +"four"+ NL));
+        assertEquals(4, connector.getStdoutLine());
+        assertEquals(4, connector.getSeenEvents().getPollAfter());
+
+        // From now on the events are all we read
+        connector.logJobStdout(5, logger, false, true);
+        assertEquals(2, tower.count("GET /api/v1/jobs/5/stdout/"));
+        assertTrue(tower.getRequests().contains("GET /api/v1/jobs/5/job_events/?order_by=counter&page_size=200&counter__gt=4"));
+    }
+}
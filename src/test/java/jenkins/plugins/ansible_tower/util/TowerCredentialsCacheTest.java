@@ -0,0 +1,68 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TowerCredentialsCacheTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private SystemCredentialsProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        // The cache is static, don't let one test see another's credentials
+        TowerCredentialsCache.invalidate();
+        provider = SystemCredentialsProvider.getInstance();
+        setPassword("secret");
+    }
+
+    private void setPassword(String password) throws Exception {
+        provider.getCredentials().clear();
+        provider.getCredentials().add(new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "tower", null, "admin", password));
+        provider.save();
+    }
+
+    @Test
+    public void resolvesTheCredential() {
+        TowerCredentialsCache.Entry entry = TowerCredentialsCache.get("tower");
+        assertEquals("admin", entry.getUsername());
+        assertEquals("secret", entry.getPassword());
+    }
+
+    @Test
+    public void unknownOrBlankIdHasNoCredentials() {
+        assertNull(TowerCredentialsCache.get("missing").getUsername());
+        assertNull(TowerCredentialsCache.get("  ").getPassword());
+        assertNull(TowerCredentialsCache.get(null).getUsername());
+    }
+
+    // Once resolved the credential comes from the cache, not another walk of every credential
+    @Test
+    public void repeatLookupsAreCached() {
+        TowerCredentialsCache.Entry first = TowerCredentialsCache.get("tower");
+        // Changed behind the cache's back, nothing was saved so nothing told us
+        provider.getCredentials().clear();
+        assertSame(first, TowerCredentialsCache.get("tower"));
+    }
+
+    @Test
+    public void savingTheCredentialsDropsTheCache() throws Exception {
+        TowerCredentialsCache.Entry before = TowerCredentialsCache.get("tower");
+        setPassword("rotated");
+        TowerCredentialsCache.Entry after = TowerCredentialsCache.get("tower");
+        assertEquals("rotated", after.getPassword());
+        // So a token logged in with the old password isn't used with the new one
+        assertNotEquals(before.getFingerprint(), after.getFingerprint());
+    }
+}
@@ -0,0 +1,104 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TowerDecodingEntityTest {
+    private static final String BODY;
+    static {
+        StringBuilder body = new StringBuilder("{\"results\": [");
+        for(int i = 1; i <= 200; i++) {
+            if(i > 1) { body.append(", "); }
+            body.append("{\"counter\": ").append(i).append(", \"stdout\": \"TASK [common : install packages] ok: [web").append(i).append("]\"}");
+        }
+        BODY = body.append("]}").toString();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String read(TowerDecodingEntity entity) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (InputStream in = entity.getContent()) {
+            byte[] buffer = new byte[333];
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)) { text.write(buffer, 0, read); }
+        }
+        return new String(text.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void inflatesGzip() throws Exception {
+        TowerTrafficStats stats = new TowerTrafficStats();
+        byte[] wire = gzip(BODY);
+        TowerDecodingEntity entity = new TowerDecodingEntity(new ByteArrayEntity(wire), "gzip", stats);
+        assertEquals(BODY, read(entity));
+        assertEquals(wire.length, stats.getWireBytes());
+        assertEquals(BODY.length(), stats.getDecodedBytes());
+        assertTrue("saved "+ stats.getSavedPercent() +"%", stats.getSavedPercent() > 80);
+    }
+
+    @Test
+    public void inflatesDeflate() throws Exception {
+        TowerDecodingEntity entity = new TowerDecodingEntity(new ByteArrayEntity(deflate(BODY)), "deflate", null);
+        assertEquals(BODY, read(entity));
+    }
+
+    @Test
+    public void identityIsOnlyCounted() throws Exception {
+        TowerTrafficStats stats = new TowerTrafficStats();
+        byte[] wire = BODY.getBytes(StandardCharsets.UTF_8);
+        TowerDecodingEntity entity = new TowerDecodingEntity(new ByteArrayEntity(wire), null, stats);
+        assertEquals(BODY, read(entity));
+        assertEquals(wire.length, entity.getContentLength());
+        assertEquals(stats.getWireBytes(), stats.getDecodedBytes());
+        assertEquals(0, stats.getSavedPercent());
+    }
+
+    // Whoever reads the entity sees plain content, the length on the wire says nothing about it
+    @Test
+    public void describesTheDecodedContent() throws Exception {
+        TowerDecodingEntity entity = new TowerDecodingEntity(new ByteArrayEntity(gzip(BODY)), "gzip", null);
+        assertNull(entity.getContentEncoding());
+        assertEquals(-1, entity.getContentLength());
+    }
+
+    @Test
+    public void knowsWhatItCanDecode() {
+        assertTrue(TowerDecodingEntity.canDecode(null));
+        assertTrue(TowerDecodingEntity.canDecode("identity"));
+        assertTrue(TowerDecodingEntity.canDecode("GZIP"));
+        assertTrue(TowerDecodingEntity.canDecode("x-gzip"));
+        assertTrue(TowerDecodingEntity.canDecode("deflate"));
+        assertFalse(TowerDecodingEntity.canDecode("br"));
+    }
+
+    @Test
+    public void nothingReadNothingSaved() {
+        assertEquals(0, new TowerTrafficStats().getSavedPercent());
+    }
+}
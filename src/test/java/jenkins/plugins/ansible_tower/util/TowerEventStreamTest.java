@@ -0,0 +1,188 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.CustomSSLWebSocketServerFactory;
+import org.java_websocket.server.WebSocketServer;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TowerEventStreamTest {
+    private static final Pattern CSRF_COOKIE = Pattern.compile("csrftoken=([^;]+)");
+    private static final Pattern XRF_TOKEN = Pattern.compile("\"xrftoken\": \"([^\"]*)\"");
+
+    private StubTowerSocket tower;
+    private TowerConnector connector;
+
+    @After
+    public void tearDown() throws Exception {
+        if(connector != null) { connector.close(); }
+        if(tower != null) { tower.stop(); }
+    }
+
+    @Test
+    public void subscribesWithTheTokenFromItsCookie() throws Exception {
+        tower = StubTowerSocket.start(null);
+        connector = new TowerConnector("http://127.0.0.1:"+ tower.getPort(), "admin", "password");
+        RecordingListener listener = new RecordingListener();
+
+        TowerEventStream stream = connector.openEventStream(5, listener);
+        assertTrue("job never finished", listener.finished.await(10, TimeUnit.SECONDS));
+        stream.close();
+
+        assertTrue(tower.authorization, tower.authorization.startsWith("Basic "));
+        Matcher cookie = CSRF_COOKIE.matcher(tower.cookie);
+        assertTrue(tower.cookie, cookie.find());
+        Matcher xrfToken = XRF_TOKEN.matcher(tower.subscribe);
+        assertTrue(tower.subscribe, xrfToken.find());
+        assertEquals(cookie.group(1), xrfToken.group(1));
+        assertEquals("[1:PLAY [all], 2:ok: [web1]]", listener.events.toString());
+        assertEquals("successful", listener.status);
+    }
+
+    @Test
+    public void eachStreamHasItsOwnToken() throws Exception {
+        tower = StubTowerSocket.start(null);
+        connector = new TowerConnector("http://127.0.0.1:"+ tower.getPort(), "admin", "password");
+        RecordingListener first = new RecordingListener();
+        TowerEventStream firstStream = connector.openEventStream(5, first);
+        assertTrue(first.finished.await(10, TimeUnit.SECONDS));
+        firstStream.close();
+        String firstCookie = tower.cookie;
+        RecordingListener second = new RecordingListener();
+        connector.openEventStream(5, second);
+        assertTrue(second.finished.await(10, TimeUnit.SECONDS));
+        assertTrue(!firstCookie.equals(tower.cookie));
+    }
+
+    @Test
+    public void secureStreamUsesTheSocketWeConnected() throws Exception {
+        tower = StubTowerSocket.start(sslContext());
+        // Trusting the stub's self signed certificate, the handshake itself is what we are after
+        connector = new TowerConnector("https://localhost:"+ tower.getPort(), "admin", "password", true);
+        RecordingListener listener = new RecordingListener();
+
+        connector.openEventStream(5, listener);
+        assertTrue("job never finished", listener.finished.await(10, TimeUnit.SECONDS));
+        assertEquals("[1:PLAY [all], 2:ok: [web1]]", listener.events.toString());
+    }
+
+    @Test
+    public void untrustedCertificateFailsTheOpen() throws Exception {
+        tower = StubTowerSocket.start(sslContext());
+        connector = new TowerConnector("https://localhost:"+ tower.getPort(), "admin", "password", false);
+        try {
+            connector.openEventStream(5, new RecordingListener());
+            fail("a self signed certificate should not have been accepted");
+        } catch(AnsibleTowerException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unable to create websocket"));
+        }
+    }
+
+    private static SSLContext sslContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = TowerEventStreamTest.class.getResourceAsStream("tower-stub.jks")) {
+            assertNotNull("tower-stub.jks is missing", in);
+            keyStore.load(in, "changeit".toCharArray());
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, "changeit".toCharArray());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        return context;
+    }
+
+    // Answers like Tower's channels consumer, groups are only joined if the xrftoken matches the csrftoken cookie
+    private static class StubTowerSocket extends WebSocketServer {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private volatile String cookie = "";
+        private volatile String authorization = "";
+        private volatile String subscribe = "";
+
+        private StubTowerSocket() {
+            super(new InetSocketAddress("127.0.0.1", 0));
+        }
+
+        private static StubTowerSocket start(SSLContext sslContext) throws InterruptedException {
+            StubTowerSocket tower = new StubTowerSocket();
+            if(sslContext != null) {
+                // The library's server side drops data that arrives after a TLS 1.3 handshake now and then
+                tower.setWebSocketFactory(new CustomSSLWebSocketServerFactory(sslContext, new String[] {"TLSv1.2"}, null));
+            }
+            tower.start();
+            assertTrue("stub websocket did not start", tower.started.await(10, TimeUnit.SECONDS));
+            return tower;
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            cookie = handshake.hasFieldValue("Cookie") ? handshake.getFieldValue("Cookie") : "";
+            authorization = handshake.hasFieldValue("Authorization") ? handshake.getFieldValue("Authorization") : "";
+            conn.send("{\"accept\": true, \"user\": 1}");
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            subscribe = message;
+            Matcher cookieToken = CSRF_COOKIE.matcher(cookie);
+            Matcher xrfToken = XRF_TOKEN.matcher(message);
+            if(!cookieToken.find() || !xrfToken.find() || !cookieToken.group(1).equals(xrfToken.group(1))) {
+                // Tower logs "access denied to channel, XRF mismatch" and ignores the message
+                return;
+            }
+            conn.send("{\"group_name\": \"job_events-5\", \"job\": 5, \"counter\": 1, \"stdout\": \"PLAY [all]\"}");
+            conn.send("{\"group_name\": \"job_events-6\", \"job\": 6, \"counter\": 1, \"stdout\": \"someone else\"}");
+            conn.send("{\"group_name\": \"job_events-5\", \"job\": 5, \"counter\": 2, \"stdout\": \"ok: [web1]\"}");
+            conn.send("{\"group_name\": \"jobs\", \"unified_job_id\": 5, \"status\": \"successful\"}");
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) { }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) { }
+    }
+
+    private static class RecordingListener implements TowerEventStream.Listener {
+        private final List<String> events = new CopyOnWriteArrayList<String>();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile String status;
+
+        @Override
+        public void onJobEvent(int counter, String stdout) {
+            events.add(counter +":"+ stdout);
+        }
+
+        @Override
+        public void onJobFinished(String status) {
+            this.status = status;
+            finished.countDown();
+        }
+
+        @Override
+        public void onStreamClosed(String reason) { }
+    }
+}
@@ -0,0 +1,95 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Deduplicating the events of a job, reported per event.
+ * The HashSet is what remembering every printed event costs, the Vector is how the connector used to track displayed events.
+ * All three see the same events, the job is kept small enough for the Vector's contains() to get through it.
+ * The Vector and the HashSet only get worse per event as the job grows, the window stays the same.
+ * Run with the gc profiler (main does) to compare allocations as well, the window allocates next to nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(TowerEventWindowBenchmark.EVENTS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TowerEventWindowBenchmark {
+    static final int EVENTS = 10000;
+
+    // How far out of order events arrive, 0 is a job whose events Tower committed in order
+    @Param({"0", "200"})
+    public int reach;
+
+    private int[] counters;
+
+    @Setup
+    public void setUp() {
+        List<Integer> shuffled = TowerEventWindowTest.shuffledCounters(EVENTS, Math.max(1, reach), 7);
+        counters = new int[EVENTS];
+        for(int i = 0; i < EVENTS; i++) { counters[i] = shuffled.get(i); }
+    }
+
+    @Benchmark
+    public int window() {
+        TowerEventWindow window = new TowerEventWindow();
+        int printed = 0;
+        for(int counter : counters) {
+            if(window.markSeen(counter)) { printed++; }
+        }
+        return printed;
+    }
+
+    @Benchmark
+    public int hashSet() {
+        Set<Integer> seen = new HashSet<Integer>();
+        int printed = 0;
+        for(int counter : counters) {
+            if(seen.add(counter)) { printed++; }
+        }
+        return printed;
+    }
+
+    @Benchmark
+    public int vector() {
+        Vector<Integer> seen = new Vector<Integer>();
+        int printed = 0;
+        for(int counter : counters) {
+            if(!seen.contains(counter)) {
+                seen.add(counter);
+                printed++;
+            }
+        }
+        return printed;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TowerEventWindowBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()
+        ).run();
+    }
+}
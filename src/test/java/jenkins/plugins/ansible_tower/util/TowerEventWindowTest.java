@@ -0,0 +1,146 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TowerEventWindowTest {
+    private static final int EVENTS = 200000;
+
+    // Counters 1..count shuffled within overlapping blocks so events commit out of order the way Tower does,
+    // no counter ends up more than twice the reach from its place so the window never has to give up on one
+    static List<Integer> shuffledCounters(int count, int reach, long seed) {
+        Random random = new Random(seed);
+        List<Integer> counters = new ArrayList<Integer>();
+        for(int counter = 1; counter <= count; counter++) { counters.add(counter); }
+        for(int offset : new int[] { 0, reach / 2 }) {
+            for(int start = offset; start < count; start += reach) {
+                Collections.shuffle(counters.subList(start, Math.min(count, start + reach)), random);
+            }
+        }
+        return counters;
+    }
+
+    // Everything before the first counter missing from seen
+    private static int firstGap(Set<Integer> seen) {
+        int complete = 0;
+        while(seen.contains(complete + 1)) { complete++; }
+        return complete;
+    }
+
+    @Test
+    public void inOrder() {
+        TowerEventWindow window = new TowerEventWindow();
+        for(int counter = 1; counter <= 1000; counter++) { assertTrue(window.markSeen(counter)); }
+        assertEquals(1000, window.getPollAfter());
+        assertFalse(window.markSeen(1000));
+        assertFalse(window.markSeen(1));
+    }
+
+    // Checked against a HashSet of everything seen, with events repeated the way polling and the websocket overlap
+    @Test
+    public void matchesAHashSetForOutOfOrderEvents() {
+        Random random = new Random(42);
+        TowerEventWindow window = new TowerEventWindow();
+        Set<Integer> seen = new HashSet<Integer>();
+        List<Integer> delivered = new ArrayList<Integer>();
+        for(int counter : shuffledCounters(EVENTS, 200, 7)) {
+            delivered.add(counter);
+            // Now and then the same event again, from anywhere in the recent past
+            if(random.nextInt(10) == 0) { delivered.add(delivered.get(random.nextInt(delivered.size()))); }
+        }
+
+        for(int i = 0; i < delivered.size(); i++) {
+            int counter = delivered.get(i);
+            assertEquals("counter "+ counter +" at "+ i, seen.add(counter), window.markSeen(counter));
+            if(i % 1000 == 0) {
+                assertEquals(firstGap(seen), window.getPollAfter());
+                int probe = counter + random.nextInt(400) - 200;
+                assertEquals("isSeen("+ probe +")", seen.contains(probe), window.isSeen(probe));
+            }
+        }
+        assertEquals(EVENTS, seen.size());
+        assertEquals(EVENTS, window.getPollAfter());
+    }
+
+    @Test
+    public void gapIsPolledFromUntilItFills() {
+        TowerEventWindow window = new TowerEventWindow();
+        window.markSeen(1);
+        window.markSeen(3);
+        window.markSeen(4);
+        assertEquals(1, window.getPollAfter());
+        assertTrue(window.isSeen(4));
+        assertFalse(window.isSeen(2));
+        assertTrue(window.markSeen(2));
+        assertEquals(4, window.getPollAfter());
+    }
+
+    // An event that hasn't turned up MAX_AHEAD counters later is given up on so the window can move
+    @Test
+    public void eventMissingTooLongIsGivenUpOn() {
+        TowerEventWindow window = new TowerEventWindow();
+        window.markSeen(1);
+        for(int counter = 3; counter <= TowerEventWindow.MAX_AHEAD + 1; counter++) { assertTrue(window.markSeen(counter)); }
+        assertEquals(1, window.getPollAfter());
+
+        assertTrue(window.markSeen(TowerEventWindow.MAX_AHEAD + 2));
+        assertEquals(TowerEventWindow.MAX_AHEAD + 2, window.getPollAfter());
+        // Too late, it is treated as printed
+        assertFalse(window.markSeen(2));
+    }
+
+    @Test
+    public void resumesFromASavedCounter() {
+        TowerEventWindow window = new TowerEventWindow(500);
+        assertTrue(window.isSeen(500));
+        assertFalse(window.markSeen(37));
+        assertTrue(window.markSeen(501));
+        assertEquals(0, new TowerEventWindow(-5).getPollAfter());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        TowerEventWindow window = new TowerEventWindow();
+        window.markSeen(1);
+        window.markSeen(3);
+        TowerEventWindow copy = window.copy();
+        window.markSeen(5);
+        assertTrue(copy.isSeen(3));
+        assertFalse(copy.isSeen(5));
+        assertTrue(copy.markSeen(5));
+    }
+
+    // The window is part of the saved step state, what was out of order must survive a restart
+    @Test
+    public void survivesSerialization() throws Exception {
+        TowerEventWindow window = new TowerEventWindow();
+        window.markSeen(1);
+        window.markSeen(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(window);
+        }
+        TowerEventWindow restored;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = (TowerEventWindow) in.readObject();
+        }
+        assertEquals(1, restored.getPollAfter());
+        assertFalse(restored.markSeen(3));
+        assertTrue(restored.markSeen(2));
+        assertEquals(3, restored.getPollAfter());
+    }
+}
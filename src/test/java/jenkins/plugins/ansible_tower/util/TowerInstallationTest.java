@@ -0,0 +1,153 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TowerInstallationTest {
+    private static TowerInstallation installation() {
+        return new TowerInstallation("tower", "https://tower.example.com", "tower-creds", false);
+    }
+
+    // Saving the global config with nothing changed must leave running builds on the same shared state
+    @Test
+    public void unchangedSettingsKeepEverything() throws Exception {
+        TowerInstallation previous = installation();
+        TowerConnectionPool pool = previous.getConnectionPool();
+        TowerRequestLimiter limiter = previous.getRequestLimiter();
+        TowerLaunchLimiter launchLimiter = previous.getLaunchLimiter();
+        TowerInstallation saved = installation();
+        saved.adoptSharedState(previous);
+        assertSame(pool, saved.getConnectionPool());
+        assertSame(limiter, saved.getRequestLimiter());
+        assertSame(launchLimiter, saved.getLaunchLimiter());
+    }
+
+    // Builds that still hold the old pool move to the new one and the old connection manager is shut down
+    @Test
+    public void changedPoolSettingsRetireTheOldPool() throws Exception {
+        TowerInstallation previous = installation();
+        TowerConnectionPool pool = previous.getConnectionPool();
+        TowerInstallation changed = installation();
+        changed.setTowerMaxConnections(5);
+        changed.adoptSharedState(previous);
+
+        TowerConnectionPool replacement = changed.getConnectionPool();
+        assertNotSame(pool, replacement);
+        assertEquals(5, replacement.getMaxConnections());
+        assertTrue(pool.isRetired());
+        assertSame(replacement.getHttpClient(), pool.getHttpClient());
+        // Nothing was leased so there was nothing to wait for
+        assertTrue(pool.isShutdown());
+        assertFalse(replacement.isRetired());
+    }
+
+    @Test
+    public void launchLimiterCarriesOverUnlessTheCapChanged() {
+        TowerInstallation previous = installation();
+        TowerLaunchLimiter limiter = previous.getLaunchLimiter();
+        limiter.acquire();
+
+        TowerInstallation same = installation();
+        same.setTowerMaxConcurrentJobs(TowerLaunchLimiter.DEFAULT_MAX_CONCURRENT_JOBS);
+        same.adoptSharedState(previous);
+        assertSame(limiter, same.getLaunchLimiter());
+        assertEquals(1, same.getLaunchLimiter().getRunning());
+
+        TowerInstallation changed = installation();
+        changed.setTowerMaxConcurrentJobs(3);
+        changed.adoptSharedState(same);
+        assertNotSame(limiter, changed.getLaunchLimiter());
+        assertEquals(3, changed.getLaunchLimiter().getMaxConcurrentJobs());
+    }
+
+    // Two pollers for one Tower would each query every job
+    @Test
+    public void pollerAlwaysCarriesOver() {
+        TowerInstallation previous = installation();
+        TowerJobPoller poller = previous.getJobPoller();
+        TowerInstallation changed = installation();
+        changed.setTowerMaxInFlight(3);
+        changed.adoptSharedState(previous);
+        assertSame(poller, changed.getJobPoller());
+    }
+
+    @Test
+    public void executorCarriesOverAndFollowsTheInFlightLimit() {
+        TowerInstallation previous = installation();
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) previous.getExecutor();
+        assertEquals(TowerRequestLimiter.DEFAULT_MAX_IN_FLIGHT, executor.getMaximumPoolSize());
+
+        TowerInstallation bigger = installation();
+        bigger.setTowerMaxInFlight(25);
+        bigger.adoptSharedState(previous);
+        assertSame(executor, bigger.getExecutor());
+        assertEquals(25, executor.getCorePoolSize());
+        assertEquals(25, executor.getMaximumPoolSize());
+
+        TowerInstallation smaller = installation();
+        smaller.setTowerMaxInFlight(2);
+        smaller.adoptSharedState(bigger);
+        assertEquals(2, executor.getCorePoolSize());
+        assertEquals(2, executor.getMaximumPoolSize());
+    }
+
+    // Moving to another set of nodes leaves the old monitor's pool with nobody to use it
+    @Test
+    public void changedNodesShutDownTheOldHealthPool() throws Exception {
+        TowerInstallation previous = installation();
+        TowerConnectionPool monitorPool = previous.getHealth().getConnectionPool(false);
+        TowerInstallation clustered = installation();
+        clustered.setTowerNodeURLs("https://node2.example.com");
+        clustered.adoptSharedState(previous);
+        assertEquals(2, clustered.getHealth().getNodes().size());
+        assertTrue(monitorPool.isShutdown());
+    }
+
+    // A removed installation must not leave builds waiting on it forever or keep its threads and connections
+    @Test
+    public void shutdownFailsWaitingBuildsAndReleasesEverything() throws Exception {
+        TowerInstallation removed = installation();
+        removed.setTowerMaxConcurrentJobs(1);
+        TowerConnectionPool pool = removed.getConnectionPool();
+        TowerConnectionPool monitorPool = removed.getHealth().getConnectionPool(false);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) removed.getExecutor();
+        removed.getLaunchLimiter().acquire();
+        CompletableFuture<Void> waitingLaunch = removed.getLaunchLimiter().acquire();
+        CompletableFuture<JobStatus> waitingStatus = removed.getJobPoller().requestStatus(5, TimeUnit.MINUTES.toMillis(10));
+
+        removed.shutdown();
+        assertTrue(waitingLaunch.isCompletedExceptionally());
+        assertTrue(waitingStatus.isCompletedExceptionally());
+        assertTrue(removed.getJobPoller().requestStatus(6, 0).isCompletedExceptionally());
+        assertTrue(executor.isShutdown());
+        assertTrue(monitorPool.isShutdown());
+        assertTrue(pool.isRetired());
+        assertTrue(pool.isShutdown());
+        try {
+            waitingStatus.get();
+            fail("The status request should have failed");
+        } catch(ExecutionException e) {
+            assertEquals("The Tower installation tower was removed", e.getCause().getMessage());
+        }
+
+        // Late work from a build winding down still runs
+        final AtomicBoolean ran = new AtomicBoolean(false);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() { ran.set(true); }
+        });
+        assertTrue(ran.get());
+    }
+}
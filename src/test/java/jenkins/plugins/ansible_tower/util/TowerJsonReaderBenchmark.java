@@ -0,0 +1,124 @@
+package jenkins.plugins.ansible_tower.util;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * What one poll costs the controller, parsing a job status and a full page of job events.
+ * The tree variants are what the connector used to do (the whole body as a String, then a json-lib tree).
+ * Run main() and compare gc.alloc.rate.norm, the bytes allocated per poll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TowerJsonReaderBenchmark {
+    private byte[] jobStatus;
+    private byte[] eventPage;
+
+    @Setup
+    public void setUp() {
+        StringBuilder status = new StringBuilder("{\"id\": 1234, \"type\": \"job\", \"related\": {");
+        for(String link : new String[] {"stdout", "job_events", "job_host_summaries", "activity_stream", "notifications"}) {
+            status.append('"').append(link).append("\": \"/api/v1/jobs/1234/").append(link).append("/\", ");
+        }
+        status.append("\"labels\": \"/api/v1/jobs/1234/labels/\"}, \"summary_fields\": {\"job_template\": {\"id\": 7, \"name\": \"deploy\"}},");
+        status.append(" \"status\": \"running\", \"failed\": false, \"finished\": null, \"elapsed\": 12.5,");
+        status.append(" \"extra_vars\": \"{\\\"version\\\": \\\"1.2.3\\\"}\", \"job_args\": \"[\\\"ansible-playbook\\\", \\\"site.yml\\\"]\"}");
+        jobStatus = status.toString().getBytes(StandardCharsets.UTF_8);
+
+        // A page of 200 events the size Ansible emits for a task with a verbose result
+        StringBuilder page = new StringBuilder("{\"count\": 5000, \"next\": \"/api/v1/jobs/1234/job_events/?page=2\", \"results\": [");
+        StringBuilder stdout = new StringBuilder();
+        for(int line = 0; line < 10; line++) { stdout.append("ok: [web").append(line).append(".example.com] => {\\\"changed\\\": false}\\r\\n"); }
+        for(int event = 1; event <= 200; event++) {
+            if(event > 1) { page.append(','); }
+            page.append("{\"id\": ").append(100000 + event).append(", \"counter\": ").append(event);
+            page.append(", \"event\": \"runner_on_ok\", \"event_data\": {\"host\": \"web1\", \"res\": {\"changed\": false, \"stdout_lines\": [");
+            for(int line = 0; line < 20; line++) { page.append(line > 0 ? ", " : "").append("\"line ").append(line).append('"'); }
+            page.append("]}}, \"stdout\": \"").append(stdout).append("\"}");
+        }
+        page.append("]}");
+        eventPage = page.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object jobStatusTree() {
+        JSONObject json = JSONObject.fromObject(new String(jobStatus, StandardCharsets.UTF_8));
+        return new JobStatus(json.getInt("id"), json.getString("status"), !"null".equals(json.getString("finished")), json.getBoolean("failed"), json.getDouble("elapsed"));
+    }
+
+    @Benchmark
+    public Object jobStatusStreaming() throws Exception {
+        return TowerJsonReader.readJobStatus(new ByteArrayInputStream(jobStatus));
+    }
+
+    @Benchmark
+    public void eventPageTree(Blackhole blackhole) throws IOException {
+        Writer out = new BlackholeWriter(blackhole);
+        JSONObject json = JSONObject.fromObject(new String(eventPage, StandardCharsets.UTF_8));
+        JSONArray results = json.getJSONArray("results");
+        for(int i = 0; i < results.size(); i++) {
+            JSONObject event = results.getJSONObject(i);
+            blackhole.consume(event.getInt("counter"));
+            out.write(event.getString("stdout"));
+        }
+    }
+
+    @Benchmark
+    public void eventPageStreaming(Blackhole blackhole) throws Exception {
+        final Writer out = new BlackholeWriter(blackhole);
+        TowerJsonReader.readJobEvents(new ByteArrayInputStream(eventPage), new TowerJsonReader.EventHandler() {
+            @Override
+            public Writer startEvent(int counter) { return out; }
+            @Override
+            public void endEvent(int counter, int endLine) { }
+        });
+    }
+
+    // Stands in for the build log so the stdout is used without being kept
+    private static class BlackholeWriter extends Writer {
+        private final Blackhole blackhole;
+
+        private BlackholeWriter(Blackhole blackhole) { this.blackhole = blackhole; }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) { blackhole.consume(buffer); }
+        @Override
+        public void write(String text) { blackhole.consume(text); }
+        @Override
+        public void flush() { }
+        @Override
+        public void close() { }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TowerJsonReaderBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()
+        ).run();
+    }
+}
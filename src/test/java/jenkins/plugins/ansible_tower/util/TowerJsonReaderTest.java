@@ -0,0 +1,198 @@
+package jenkins.plugins.ansible_tower.util;
+
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TowerJsonReaderTest {
+    private static InputStream json(String json) {
+        return new ByteArrayInputStream(json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readsJobStatusAndSkipsEverythingElse() throws Exception {
+        JobStatus status = TowerJsonReader.readJobStatus(json(
+                "{'id': 12, 'related': {'stdout': '/api/v1/jobs/12/stdout/'}, 'status': 'successful',"
+                + " 'summary_fields': {'job_template': {'id': 3, 'name': 'deploy'}}, 'failed': false,"
+                + " 'finished': '2017-05-01T10:00:00Z', 'elapsed': 12.5}"
+        ));
+        assertEquals(12, status.getJobID());
+        assertEquals("successful", status.getStatus());
+        assertTrue(status.isFinished());
+        assertFalse(status.isFailed());
+        assertEquals(12.5, status.getElapsed(), 0.001);
+    }
+
+    @Test
+    public void runningJobIsNotFinished() throws Exception {
+        JobStatus status = TowerJsonReader.readJobStatus(json("{'id': 1, 'status': 'running', 'failed': false, 'finished': null}"));
+        assertFalse(status.isFinished());
+    }
+
+    @Test(expected = AnsibleTowerException.class)
+    public void jobStatusWithoutFinishedIsRejected() throws Exception {
+        TowerJsonReader.readJobStatus(json("{'id': 1, 'status': 'running'}"));
+    }
+
+    @Test(expected = AnsibleTowerException.class)
+    public void notAnObjectIsRejected() throws Exception {
+        TowerJsonReader.readJobStatus(json("['not', 'a', 'job']"));
+    }
+
+    @Test
+    public void readsAPageOfJobStatuses() throws Exception {
+        Map<Integer, JobStatus> statuses = new HashMap<Integer, JobStatus>();
+        String next = TowerJsonReader.readJobStatuses(json(
+                "{'count': 3, 'next': '/api/v1/jobs/?id__in=1,2,3&page=2', 'results': ["
+                + "{'id': 1, 'status': 'failed', 'failed': true, 'finished': '2017-05-01T10:00:00Z'},"
+                + "{'id': 2, 'status': 'running', 'failed': false, 'finished': null}]}"
+        ), statuses);
+        assertEquals("/api/v1/jobs/?id__in=1,2,3&page=2", next);
+        assertEquals(2, statuses.size());
+        assertTrue(statuses.get(1).isFailed());
+        assertFalse(statuses.get(2).isFinished());
+    }
+
+    @Test(expected = AnsibleTowerException.class)
+    public void jobListingWithoutResultsIsRejected() throws Exception {
+        TowerJsonReader.readJobStatuses(json("{'detail': 'Not found.'}"), new HashMap<Integer, JobStatus>());
+    }
+
+    @Test
+    public void streamsEventStdoutInOrder() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        String next = TowerJsonReader.readJobEvents(json(
+                "{'next': null, 'results': ["
+                + "{'id': 900, 'counter': 1, 'event_data': {'res': {'stdout': 'not this one'}}, 'stdout': 'PLAY [all]'},"
+                + "{'id': 901, 'counter': 2, 'stdout': null},"
+                + "{'id': 902, 'stdout': 'TASK [ping]', 'counter': 3}]}"
+        ), handler);
+        assertNull(next);
+        assertEquals("[1:PLAY [all]][2:][3:TASK [ping]]", handler.toString());
+    }
+
+    @Test
+    public void skippedEventsAreNotEnded() throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        handler.skip = 2;
+        TowerJsonReader.readJobEvents(json(
+                "{'results': [{'counter': 1, 'stdout': 'a'}, {'counter': 2, 'stdout': 'b'}, {'counter': 3, 'stdout': 'c'}]}"
+        ), handler);
+        assertEquals("[1:a][3:c]", handler.toString());
+    }
+
+    @Test
+    public void reportsWhereEachEventEnds() throws Exception {
+        final StringBuilder endLines = new StringBuilder();
+        TowerJsonReader.readJobEvents(json(
+                "{'results': [{'counter': 1, 'stdout': 'a\\nb', 'start_line': 0, 'end_line': 2}, {'counter': 2, 'stdout': 'c'}]}"
+        ), new RecordingHandler() {
+            @Override
+            public void endEvent(int counter, int endLine) throws IOException {
+                endLines.append(counter).append('=').append(endLine).append(' ');
+            }
+        });
+        assertEquals("1=2 2=-1 ", endLines.toString());
+    }
+
+    @Test(expected = AnsibleTowerException.class)
+    public void eventWithoutCounterIsRejected() throws Exception {
+        TowerJsonReader.readJobEvents(json("{'results': [{'id': 1, 'stdout': 'a'}]}"), new RecordingHandler());
+    }
+
+    @Test
+    public void onlyExactNamesMatch() throws Exception {
+        List<Integer> matches = new ArrayList<Integer>();
+        String next = TowerJsonReader.readNamedIDs(json(
+                "{'next': '/api/v1/job_templates/?name=deploy&page=2', 'results': ["
+                + "{'id': 4, 'name': 'deploy', 'summary_fields': {'inventory': {'name': 'deploy'}}},"
+                + "{'id': 5, 'name': 'Deploy'}, {'id': 6, 'name': null}, {'id': 7, 'name': 'deploy'}]}"
+        ), "deploy", matches);
+        assertEquals("/api/v1/job_templates/?name=deploy&page=2", next);
+        assertEquals("[4, 7]", matches.toString());
+    }
+
+    @Test
+    public void streamsStdoutContent() throws Exception {
+        StringWriter out = new StringWriter();
+        TowerJsonReader.readStdoutContent(json("{'range': {'start': 0, 'end': 2}, 'content': 'line one\\nline two\\n'}"), out);
+        assertEquals("line one\nline two\n", out.toString());
+    }
+
+    @Test
+    public void readsStreamMessages() throws Exception {
+        TowerJsonReader.StreamMessage event = TowerJsonReader.readStreamMessage(
+                "{\"group_name\": \"job_events\", \"job\": 12, \"counter\": 7, \"stdout\": \"ok: [web1]\", \"event_data\": {}}"
+        );
+        assertEquals("job_events", event.groupName);
+        assertEquals(12, event.job);
+        assertEquals(7, event.counter);
+        assertEquals("ok: [web1]", event.stdout);
+
+        TowerJsonReader.StreamMessage status = TowerJsonReader.readStreamMessage(
+                "{\"group_name\": \"jobs\", \"unified_job_id\": 12, \"status\": \"successful\"}"
+        );
+        assertEquals(12, status.unifiedJobID);
+        assertEquals("successful", status.status);
+        assertTrue(TowerJsonReader.readStreamMessage("{\"accept\": true}").accept);
+    }
+
+    @Test
+    public void readsAuthToken() throws Exception {
+        TowerJsonReader.AuthToken token = TowerJsonReader.readAuthToken(json("{'token': 'abc', 'expires': '2017-05-01T10:30:00.000Z'}"));
+        assertEquals("abc", token.token);
+        assertEquals("2017-05-01T10:30:00.000Z", token.expires);
+    }
+
+    @Test(expected = AnsibleTowerException.class)
+    public void authTokenWithoutTokenIsRejected() throws Exception {
+        TowerJsonReader.readAuthToken(json("{'detail': 'Invalid username/password.'}"));
+    }
+
+    @Test
+    public void readsTopLevelIDOnly() throws Exception {
+        assertEquals(42, TowerJsonReader.readID(json("{'related': {'id': 1}, 'job': 42, 'id': 42}")));
+    }
+
+    @Test(expected = AnsibleTowerException.class)
+    public void missingIDIsRejected() throws Exception {
+        TowerJsonReader.readID(json("{'job': 42}"));
+    }
+
+    private static class RecordingHandler implements TowerJsonReader.EventHandler {
+        private final StringBuilder events = new StringBuilder();
+        private final StringWriter current = new StringWriter();
+        private int skip = -1;
+
+        @Override
+        public Writer startEvent(int counter) throws IOException {
+            if(counter == skip) { return null; }
+            current.getBuffer().setLength(0);
+            events.append('[').append(counter).append(':');
+            return current;
+        }
+
+        @Override
+        public void endEvent(int counter, int endLine) throws IOException {
+            events.append(current.toString()).append(']');
+        }
+
+        @Override
+        public String toString() { return events.toString(); }
+    }
+}
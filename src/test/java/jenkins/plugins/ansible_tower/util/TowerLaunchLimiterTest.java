@@ -0,0 +1,89 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TowerLaunchLimiterTest {
+    @Test
+    public void waitsOnceTheCapIsReached() {
+        TowerLaunchLimiter limiter = new TowerLaunchLimiter(2);
+        assertTrue(limiter.acquire().isDone());
+        assertTrue(limiter.acquire().isDone());
+        CompletableFuture<Void> third = limiter.acquire();
+        assertFalse(third.isDone());
+        assertEquals(1, limiter.getWaiting());
+
+        limiter.release();
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.getRunning());
+        assertEquals(0, limiter.getWaiting());
+    }
+
+    @Test
+    public void waitersGoInTheOrderTheyCame() {
+        TowerLaunchLimiter limiter = new TowerLaunchLimiter(1);
+        limiter.acquire();
+        CompletableFuture<Void> first = limiter.acquire();
+        CompletableFuture<Void> second = limiter.acquire();
+        limiter.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        limiter.release();
+        assertTrue(second.isDone());
+        limiter.release();
+        assertEquals(0, limiter.getRunning());
+    }
+
+    @Test
+    public void cancelledWaiterIsSkipped() {
+        TowerLaunchLimiter limiter = new TowerLaunchLimiter(1);
+        limiter.acquire();
+        CompletableFuture<Void> aborted = limiter.acquire();
+        CompletableFuture<Void> next = limiter.acquire();
+        aborted.cancel(false);
+        limiter.release();
+        assertTrue(next.isDone());
+        assertFalse(next.isCancelled());
+        assertEquals(1, limiter.getRunning());
+    }
+
+    // A build aborted just as a permit is handed to it must not take the permit with it
+    @Test
+    public void cancelRacingAReleaseKeepsThePermit() {
+        TowerLaunchLimiter limiter = new TowerLaunchLimiter(1) {
+            private int permits = 0;
+
+            @Override
+            CompletableFuture<Void> newPermit() {
+                // The second permit is cancelled after release() has taken it off the queue but before it is completed
+                if(++permits != 2) { return super.newPermit(); }
+                return new CompletableFuture<Void>() {
+                    @Override
+                    public boolean complete(Void value) {
+                        cancel(false);
+                        return super.complete(value);
+                    }
+                };
+            }
+        };
+        limiter.acquire();
+        CompletableFuture<Void> aborted = limiter.acquire();
+        CompletableFuture<Void> next = limiter.acquire();
+        limiter.release();
+        assertTrue(aborted.isCancelled());
+        assertTrue(next.isDone());
+        assertFalse(next.isCancelled());
+        assertEquals(1, limiter.getRunning());
+
+        // With nobody left to take it the permit is given back
+        limiter.acquire().cancel(false);
+        limiter.release();
+        assertEquals(0, limiter.getRunning());
+        assertTrue(limiter.acquire().isDone());
+    }
+}
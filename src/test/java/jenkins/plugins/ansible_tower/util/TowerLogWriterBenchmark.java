@@ -0,0 +1,87 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * How fast job output goes from Tower's stdout into the build log.
+ * Every operation writes one MB of colored -vvv style output so the score in ops/s reads as MB/s.
+ * The regex variant is what logJobEvents used to do, split on \r\n and replaceAll for every line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TowerLogWriterBenchmark {
+    private static final int MB = 1024 * 1024;
+
+    // Tower hands us output an event at a time, small events for a normal run and big ones for -vvv results
+    @Param({"256", "16384"})
+    public int eventSize;
+
+    private String[] events;
+    private PrintStream buildLog;
+
+    @Setup
+    public void setUp() {
+        StringBuilder event = new StringBuilder();
+        while(event.length() < eventSize) {
+            event.append("\u001B[0;32mok: [web1.example.com] => {\"changed\": false, \"ping\": \"pong\"}\u001B[0m\r\n");
+            event.append("<web1.example.com> ESTABLISH SSH CONNECTION FOR USER: ansible\r\n");
+        }
+        String text = event.substring(0, eventSize);
+        events = new String[Math.max(1, MB / eventSize)];
+        for(int i = 0; i < events.length; i++) { events[i] = text; }
+        // The build log itself is not what we are measuring
+        buildLog = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) { }
+            @Override
+            public void write(byte[] b, int off, int len) { }
+        });
+    }
+
+    @Benchmark
+    public void regex() {
+        for(String stdOut : events) {
+            for(String line : stdOut.split("\\r\\n")) {
+                buildLog.println(line.replaceAll("\u001B\\[[;\\d]*m", ""));
+            }
+        }
+    }
+
+    @Benchmark
+    public void stateMachine() {
+        TowerLogWriter logWriter = new TowerLogWriter(buildLog, true);
+        for(String stdOut : events) {
+            logWriter.write(stdOut);
+            logWriter.endLine();
+        }
+        logWriter.flush();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TowerLogWriterBenchmark.class.getSimpleName())
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,117 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+
+import static org.junit.Assert.assertEquals;
+
+public class TowerLogWriterTest {
+    private static final String NL = System.lineSeparator();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    private TowerLogWriter writer(boolean removeColor) throws UnsupportedEncodingException {
+        return new TowerLogWriter(new PrintStream(log, true, "UTF-8"), removeColor);
+    }
+
+    private String written() throws UnsupportedEncodingException {
+        return log.toString("UTF-8");
+    }
+
+    @Test
+    public void stripsColors() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("\u001B[0;32mok: [web1]\u001B[0m\r\n\u001B[1;31mfatal\u001B[0m");
+        out.endLine();
+        out.flush();
+        assertEquals("ok: [web1]"+ NL +"fatal"+ NL, written());
+    }
+
+    @Test
+    public void keepsColorsUnlessAsked() throws Exception {
+        TowerLogWriter out = writer(false);
+        out.write("\u001B[0;32mok\u001B[0m\r\n");
+        out.flush();
+        assertEquals("\u001B[0;32mok\u001B[0m"+ NL, written());
+    }
+
+    @Test
+    public void stripsEveryKindOfCsiSequence() throws Exception {
+        TowerLogWriter out = writer(true);
+        // Cursor movement, erase line, private mode and the single character C1 introducer
+        out.write("a\u001B[2Kb\u001B[10;20Hc\u001B[?25ld\u009B1me");
+        out.flush();
+        assertEquals("abcde", written());
+    }
+
+    @Test
+    public void stripsOscAndTwoCharacterEscapes() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("a\u001B]0;title\u0007b\u001B]8;;http://example.com\u001B\\c\u001B(Bd");
+        out.flush();
+        assertEquals("abcd", written());
+    }
+
+    @Test
+    public void sequenceSplitAcrossWrites() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("ok\u001B");
+        out.write("[0;");
+        out.write("32");
+        out.write("m: [web1]\r");
+        out.write("\n");
+        out.flush();
+        assertEquals("ok: [web1]"+ NL, written());
+    }
+
+    @Test
+    public void brokenSequenceKeepsTheText() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("a\u001B[12\nb");
+        out.flush();
+        assertEquals("a\nb", written());
+    }
+
+    @Test
+    public void loneCarriageReturnIsKept() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("10%\r20%\r");
+        out.endLine();
+        out.flush();
+        assertEquals("10%\r20%\r"+ NL, written());
+    }
+
+    @Test
+    public void endLineResetsAnOpenSequence() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("first\u001B[0");
+        out.endLine();
+        out.write("second");
+        out.flush();
+        assertEquals("first"+ NL +"second", written());
+    }
+
+    @Test
+    public void outputLargerThanTheBuffer() throws Exception {
+        TowerLogWriter out = writer(true);
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 5000; i++) {
+            out.write("\u001B[0;32mline "+ i +"\u001B[0m\r\n");
+            expected.append("line ").append(i).append(NL);
+        }
+        out.close();
+        assertEquals(expected.toString(), written());
+    }
+
+    @Test
+    public void nothingReachesTheLogUntilFlushed() throws Exception {
+        TowerLogWriter out = writer(true);
+        out.write("buffered");
+        assertEquals("", written());
+        out.flush();
+        assertEquals("buffered", written());
+    }
+}
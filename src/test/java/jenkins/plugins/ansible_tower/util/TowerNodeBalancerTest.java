@@ -0,0 +1,191 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TowerNodeBalancerTest {
+    private static class SteppedBalancer extends TowerNodeBalancer {
+        long time = 1000;
+
+        SteppedBalancer(String... urls) { super(Arrays.asList(urls)); }
+
+        @Override
+        long now() { return time; }
+    }
+
+    private final SteppedBalancer balancer = new SteppedBalancer("a", "b", "c");
+
+    private TowerNodeBalancer.Node node(String url) {
+        for(TowerNodeBalancer.Node node : balancer.getNodes()) {
+            if(node.getURL().equals(url)) { return node; }
+        }
+        throw new IllegalArgumentException(url);
+    }
+
+    private void eject(TowerNodeBalancer.Node node) {
+        for(int i = 0; i < TowerNodeBalancer.EJECT_AFTER_FAILURES; i++) {
+            balancer.acquire(node);
+            balancer.release(node, false);
+        }
+    }
+
+    private String chooseSix() {
+        StringBuilder chosen = new StringBuilder();
+        for(int i = 0; i < 6; i++) { chosen.append(balancer.choose(null).getURL()); }
+        return chosen.toString();
+    }
+
+    @Test
+    public void idleNodesAreUsedInTurn() {
+        assertEquals("abcabc", chooseSix());
+    }
+
+    @Test
+    public void busiestNodeIsPassedOver() {
+        TowerNodeBalancer.Node first = balancer.choose(null);
+        balancer.acquire(first);
+        TowerNodeBalancer.Node second = balancer.choose(null);
+        balancer.acquire(second);
+        TowerNodeBalancer.Node third = balancer.choose(null);
+        assertEquals(3, new HashSet<TowerNodeBalancer.Node>(Arrays.asList(first, second, third)).size());
+
+        // Only "a" has anything outstanding now, whoever's turn it is
+        balancer.release(second, true);
+        for(int i = 0; i < 6; i++) { assertNotSame(first, balancer.choose(null)); }
+        assertEquals(1, balancer.getOutstanding(first));
+    }
+
+    // A retry moves off the node that just failed when there is anywhere else to go
+    @Test
+    public void retryAvoidsTheFailedNode() {
+        for(int i = 0; i < 6; i++) { assertNotSame(node("b"), balancer.choose(node("b"))); }
+        SteppedBalancer single = new SteppedBalancer("only");
+        TowerNodeBalancer.Node only = single.getNodes().get(0);
+        assertSame(only, single.choose(only));
+    }
+
+    @Test
+    public void failingNodeIsLeftOutForAWhile() {
+        TowerNodeBalancer.Node b = node("b");
+        balancer.acquire(b);
+        balancer.release(b, false);
+        assertFalse("One failure is not enough", balancer.isEjected(b));
+        balancer.acquire(b);
+        balancer.release(b, false);
+        assertTrue(balancer.isEjected(b));
+        assertEquals("acacac", chooseSix());
+
+        balancer.time += TowerNodeBalancer.EJECT_DURATION;
+        assertFalse(balancer.isEjected(b));
+        assertTrue(chooseSix().contains("b"));
+    }
+
+    @Test
+    public void successClearsTheFailures() {
+        TowerNodeBalancer.Node b = node("b");
+        balancer.acquire(b);
+        balancer.release(b, false);
+        balancer.acquire(b);
+        balancer.release(b, true);
+        balancer.acquire(b);
+        balancer.release(b, false);
+        assertFalse(balancer.isEjected(b));
+    }
+
+    // Pool timeouts happen on our side, they must not count against the node
+    @Test
+    public void releaseWithoutVerdictLeavesHealthAlone() {
+        TowerNodeBalancer.Node b = node("b");
+        for(int i = 0; i < 5; i++) {
+            balancer.acquire(b);
+            balancer.release(b);
+        }
+        assertFalse(balancer.isEjected(b));
+        assertEquals(0, balancer.getOutstanding(b));
+    }
+
+    // Better to try a node that is probably down than to fail without trying
+    @Test
+    public void allEjectedFallsBackToTheOneOutLongest() {
+        eject(node("b"));
+        balancer.time += 10;
+        eject(node("a"));
+        eject(node("c"));
+        for(int i = 0; i < 3; i++) { assertSame(node("b"), balancer.choose(null)); }
+    }
+
+    @Test
+    public void healthMonitorCanTakeANodeOutAndBringItBack() {
+        balancer.markDown("c", balancer.time + 5000);
+        assertTrue(balancer.isEjected(node("c")));
+        assertEquals("ababab", chooseSix());
+        balancer.markUp("c");
+        assertFalse(balancer.isEjected(node("c")));
+    }
+
+    // The monitor reaching a node doesn't mean builds' requests to it stopped failing
+    @Test
+    public void markUpDoesNotOverrideFailures() {
+        eject(node("c"));
+        balancer.markUp("c");
+        assertTrue(balancer.isEjected(node("c")));
+    }
+
+    @Test
+    public void compatibleOnlyWithTheSameNodes() {
+        assertTrue(balancer.isCompatible(Arrays.asList("a", "b", "c")));
+        assertFalse(balancer.isCompatible(Arrays.asList("a", "b")));
+        assertFalse(balancer.isCompatible(Arrays.asList("c", "b", "a")));
+    }
+
+    // Reads spread over the cluster and a retry goes elsewhere, launches stay on the build's node
+    @Test
+    public void connectorSpreadsReadsAndKeepsLaunchesOnOneNode() throws Exception {
+        try (TowerStub up = new TowerStub(); TowerStub down = new TowerStub()) {
+            up.onJson("/api/v1/jobs/5/", 200, "{\"id\": 5, \"status\": \"running\", \"failed\": false, \"finished\": null}");
+            down.onJson("/api/v1/jobs/5/", 503, "{}");
+            for(TowerStub node : Arrays.asList(up, down)) {
+                final TowerStub self = node;
+                node.on("/api/v1/job_templates/7/launch/", new TowerStub.Handler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        TowerStub.respond(exchange, self == up ? 201 : 503, "{\"id\": 5}");
+                    }
+                });
+            }
+
+            TowerNodeBalancer cluster = new TowerNodeBalancer(Arrays.asList(up.getURL(), down.getURL()));
+            Set<String> launchedOn = new HashSet<String>();
+            for(int build = 0; build < 4; build++) {
+                TowerConnector connector = new TowerConnector(up.getURL(), "admin", "password");
+                connector.setNodeBalancer(cluster);
+                try {
+                    assertEquals(5, connector.getJobStatus(5).getJobID());
+                    try {
+                        connector.submitJob("7", null, null, null, null, null);
+                        launchedOn.add("up");
+                    } catch(Exception e) {
+                        launchedOn.add("down");
+                    }
+                } finally {
+                    connector.close();
+                }
+            }
+            // Every status read succeeded even though half the cluster answers 503
+            assertEquals(4, up.count("GET /api/v1/jobs/5/"));
+            // and each launch went out exactly once, to whichever node the build was given
+            assertEquals(4, up.count("POST ") + down.count("POST "));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Just enough of a Tower API on localhost for the connector tests.
+ * Handlers are registered by path, the query string is left to the handler, anything else gets a 404.
+ * Every request is recorded as "METHOD /path?query" so tests can check what was asked for.
+ */
+public class TowerStub implements AutoCloseable {
+    public interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<String, Handler>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    public TowerStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getRawQuery();
+                requests.add(exchange.getRequestMethod() +" "+ exchange.getRequestURI().getPath() + (query == null ? "" : "?"+ query));
+                try {
+                    Handler handler = handlers.get(exchange.getRequestURI().getPath());
+                    if(handler == null) {
+                        respond(exchange, 404, "{\"detail\": \"Not found.\"}");
+                    } else {
+                        handler.handle(exchange);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // Enough threads that a test hammering the stub measures the connector, not us
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getURL() {
+        return "http://127.0.0.1:"+ server.getAddress().getPort();
+    }
+
+    public void on(String path, Handler handler) {
+        handlers.put(path, handler);
+    }
+
+    // Always answers the path with the same JSON
+    public void onJson(String path, final int status, final String json) {
+        on(path, new Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException { respond(exchange, status, json); }
+        });
+    }
+
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<String>(requests);
+        }
+    }
+
+    public int count(String prefix) {
+        int count = 0;
+        for(String request : getRequests()) {
+            if(request.startsWith(prefix)) { count++; }
+        }
+        return count;
+    }
+
+    public static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if(status == 304 || status == 204) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,265 @@
+package jenkins.plugins.ansible_tower.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import jenkins.plugins.ansible_tower.AnsibleTowerException;
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TowerTokenCacheTest {
+    private static final String AUTH_TOKEN = "/api/v1/authtoken/";
+    private static final String JOB = "/api/v1/jobs/5/";
+    private static final long START = Instant.parse("2017-05-01T10:00:00Z").toEpochMilli();
+    private static final long LIFETIME = TimeUnit.MINUTES.toMillis(30);
+
+    private static class SteppedTokenCache extends TowerTokenCache {
+        long time = START;
+
+        @Override
+        long now() { return time; }
+    }
+
+    private TowerStub tower;
+    private final SteppedTokenCache cache = new SteppedTokenCache();
+    private final AtomicInteger issued = new AtomicInteger();
+    // The token Tower currently accepts, null once it has been revoked
+    private volatile String valid = null;
+    private final List<String> authorizations = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        tower = new TowerStub();
+        tower.on(AUTH_TOKEN, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JSONObject login = JSONObject.fromObject(TowerStub.readBody(exchange));
+                if(!"password".equals(login.optString("password"))) {
+                    TowerStub.respond(exchange, 400, "{\"non_field_errors\": [\"Unable to login with provided credentials.\"]}");
+                    return;
+                }
+                valid = "t"+ issued.incrementAndGet();
+                String expires = Instant.ofEpochMilli(START + LIFETIME * issued.get()).toString();
+                TowerStub.respond(exchange, 200, "{\"token\": \""+ valid +"\", \"expires\": \""+ expires +"\"}");
+            }
+        });
+        tower.on(JOB, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+                authorizations.add(authorization);
+                if(authorization == null || !(authorization.startsWith("Basic ") || authorization.equals("Token "+ valid))) {
+                    TowerStub.respond(exchange, 401, "{\"detail\": \"Invalid token.\"}");
+                    return;
+                }
+                TowerStub.respond(exchange, 200, "{\"id\": 5, \"status\": \"running\", \"failed\": false, \"finished\": null}");
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        tower.close();
+    }
+
+    private TowerConnector connector(String password) throws AnsibleTowerException {
+        TowerConnector connector = new TowerConnector(tower.getURL(), "admin", password);
+        connector.setTokenCache(cache);
+        return connector;
+    }
+
+    private TowerConnector connector() throws AnsibleTowerException {
+        return connector("password");
+    }
+
+    private String lastAuthorization() {
+        return authorizations.get(authorizations.size() - 1);
+    }
+
+    @Test
+    public void buildsShareOneLogin() throws Exception {
+        for(int build = 0; build < 5; build++) {
+            TowerConnector connector = connector();
+            connector.getJobStatus(5);
+            connector.close();
+        }
+        assertEquals(1, tower.count("POST "+ AUTH_TOKEN));
+        assertEquals(Collections.nCopies(5, "Token t1"), authorizations);
+    }
+
+    // Builds that all find the token missing at once must not each log in
+    @Test
+    public void concurrentBuildsShareOneLogin() throws Exception {
+        ExecutorService builds = Executors.newFixedThreadPool(16);
+        List<Future<Integer>> done = new ArrayList<Future<Integer>>();
+        for(int build = 0; build < 16; build++) {
+            done.add(builds.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    TowerConnector connector = connector();
+                    try {
+                        return connector.getJobStatus(5).getJobID();
+                    } finally {
+                        connector.close();
+                    }
+                }
+            }));
+        }
+        for(Future<Integer> build : done) { assertEquals(5, (int) build.get(30, TimeUnit.SECONDS)); }
+        builds.shutdown();
+        assertEquals(1, tower.count("POST "+ AUTH_TOKEN));
+    }
+
+    // Tower can take its time over a login, that must not hold up everything else that uses the cache
+    @Test
+    public void slowLoginDoesNotHoldTheCache() throws Exception {
+        final CountDownLatch loggingIn = new CountDownLatch(1);
+        final CountDownLatch letThrough = new CountDownLatch(1);
+        tower.on(AUTH_TOKEN, new TowerStub.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                loggingIn.countDown();
+                try {
+                    letThrough.await(30, TimeUnit.SECONDS);
+                } catch(InterruptedException e) {
+                    throw new IOException(e);
+                }
+                valid = "slow";
+                TowerStub.respond(exchange, 200, "{\"token\": \"slow\", \"expires\": \""+ Instant.ofEpochMilli(START + LIFETIME) +"\"}");
+            }
+        });
+        ExecutorService builds = Executors.newFixedThreadPool(2);
+        Future<Integer> first = builds.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception { return connector().getJobStatus(5).getJobID(); }
+        });
+        assertTrue(loggingIn.await(10, TimeUnit.SECONDS));
+
+        // A build dropping a token Tower refused doesn't wait for the login to finish
+        Future<?> invalidate = builds.submit(new Runnable() {
+            @Override
+            public void run() { cache.invalidate("t0"); }
+        });
+        invalidate.get(5, TimeUnit.SECONDS);
+
+        // A build waiting on someone else's login can still be aborted
+        final List<Exception> aborted = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    connector().getJobStatus(5);
+                } catch(AnsibleTowerException e) {
+                    aborted.add(e);
+                }
+            }
+        });
+        waiting.start();
+        waiting.interrupt();
+        waiting.join(5000);
+        assertFalse(waiting.isAlive());
+        assertEquals(1, aborted.size());
+        assertEquals("Interrupted while waiting to log in to Tower", aborted.get(0).getMessage());
+
+        letThrough.countDown();
+        assertEquals(5, (int) first.get(10, TimeUnit.SECONDS));
+        builds.shutdown();
+        assertEquals(1, tower.count("POST "+ AUTH_TOKEN));
+        assertEquals("Token slow", lastAuthorization());
+    }
+
+    @Test
+    public void tokenIsRenewedShortlyBeforeItExpires() throws Exception {
+        TowerConnector connector = connector();
+        connector.getJobStatus(5);
+        cache.time = START + LIFETIME - TowerTokenCache.REFRESH_MARGIN - 1;
+        connector.getJobStatus(5);
+        assertEquals(1, tower.count("POST "+ AUTH_TOKEN));
+
+        cache.time += 1;
+        connector.getJobStatus(5);
+        assertEquals(2, tower.count("POST "+ AUTH_TOKEN));
+        assertEquals("Token t2", lastAuthorization());
+    }
+
+    // Tower can drop a token before it said it would, the request goes through on a fresh one
+    @Test
+    public void revokedTokenIsReplacedAndTheRequestRetried() throws Exception {
+        TowerConnector connector = connector();
+        connector.getJobStatus(5);
+        valid = "revoked";
+        assertEquals(5, connector.getJobStatus(5).getJobID());
+        assertEquals(2, tower.count("POST "+ AUTH_TOKEN));
+        assertEquals(3, tower.count("GET "+ JOB));
+        assertEquals("Token t2", lastAuthorization());
+    }
+
+    @Test
+    public void changedCredentialsGetTheirOwnToken() throws Exception {
+        TowerConnector connector = connector();
+        connector.getJobStatus(5);
+        TowerConnector other = connector();
+        other.setCredentialsFingerprint("someone else");
+        other.getJobStatus(5);
+        assertEquals(2, tower.count("POST "+ AUTH_TOKEN));
+    }
+
+    // An older Tower has no token endpoint, we use Basic auth and don't ask again for a while
+    @Test
+    public void towerWithoutTokensFallsBackToBasicAuth() throws Exception {
+        tower.onJson(AUTH_TOKEN, 404, "{\"detail\": \"Not found.\"}");
+        TowerConnector connector = connector();
+        connector.getJobStatus(5);
+        connector.getJobStatus(5);
+        assertEquals(1, tower.count("POST "+ AUTH_TOKEN));
+        assertTrue(lastAuthorization().startsWith("Basic "));
+
+        cache.time += TowerTokenCache.UNSUPPORTED_RECHECK;
+        connector.getJobStatus(5);
+        assertEquals(2, tower.count("POST "+ AUTH_TOKEN));
+    }
+
+    @Test
+    public void wrongPasswordIsReported() throws Exception {
+        TowerConnector connector = connector("wrong");
+        try {
+            connector.getJobStatus(5);
+            fail("Expected the login to be refused");
+        } catch(AnsibleTowerException e) {
+            assertEquals("Username/password invalid", e.getMessage());
+        } finally {
+            connector.close();
+        }
+        assertEquals(0, tower.count("GET "+ JOB));
+    }
+
+    // Without an expiry from Tower the token is only trusted for a short while
+    @Test
+    public void missingExpiryUsesTheDefaultLifetime() throws Exception {
+        tower.onJson(AUTH_TOKEN, 200, "{\"token\": \"forever\"}");
+        valid = "forever";
+        TowerConnector connector = connector();
+        connector.getJobStatus(5);
+        cache.time += TowerTokenCache.DEFAULT_LIFETIME - TowerTokenCache.REFRESH_MARGIN;
+        connector.getJobStatus(5);
+        assertEquals(2, tower.count("POST "+ AUTH_TOKEN));
+    }
+}
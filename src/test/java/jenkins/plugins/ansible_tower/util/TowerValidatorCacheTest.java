@@ -0,0 +1,60 @@
+package jenkins.plugins.ansible_tower.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class TowerValidatorCacheTest {
+    @Test
+    public void remembersValidatorsAndValue() {
+        TowerValidatorCache cache = new TowerValidatorCache();
+        Object status = new Object();
+        cache.put("/api/v1/jobs/5/", "\"abc\"", "Mon, 01 May 2017 10:00:00 GMT", status);
+        TowerValidatorCache.Entry entry = cache.get("/api/v1/jobs/5/");
+        assertEquals("\"abc\"", entry.getETag());
+        assertEquals("Mon, 01 May 2017 10:00:00 GMT", entry.getLastModified());
+        assertEquals(status, entry.getValue());
+        assertNull(cache.get("/api/v1/jobs/6/"));
+    }
+
+    // Without a validator the next response can't be a 304, so there is no point keeping the value
+    @Test
+    public void responseWithoutValidatorsDropsTheEntry() {
+        TowerValidatorCache cache = new TowerValidatorCache();
+        cache.put("/api/v1/jobs/5/", "\"abc\"", null, "old");
+        cache.put("/api/v1/jobs/5/", null, null, "new");
+        assertNull(cache.get("/api/v1/jobs/5/"));
+    }
+
+    @Test
+    public void eitherValidatorIsEnough() {
+        TowerValidatorCache cache = new TowerValidatorCache();
+        cache.put("etag", "\"abc\"", null, "value");
+        cache.put("modified", null, "Mon, 01 May 2017 10:00:00 GMT", "value");
+        assertNotNull(cache.get("etag"));
+        assertNotNull(cache.get("modified"));
+    }
+
+    @Test
+    public void leastRecentlyUsedFallsOff() {
+        TowerValidatorCache cache = new TowerValidatorCache(2);
+        cache.put("a", "\"a\"", null, "a");
+        cache.put("b", "\"b\"", null, "b");
+        // Polling "a" again makes "b" the one we used longest ago
+        cache.get("a");
+        cache.put("c", "\"c\"", null, "c");
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void invalidateDropsTheEntry() {
+        TowerValidatorCache cache = new TowerValidatorCache();
+        cache.put("a", "\"a\"", null, "a");
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+    }
+}